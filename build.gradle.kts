@@ -2,6 +2,7 @@ import org.jetbrains.kotlin.gradle.tasks.KotlinCompile
 
 plugins {
     kotlin("jvm") version "1.7.20"
+    id("me.champeau.jmh") version "0.6.8"
     apply { `maven-publish` }
     apply { java }
 }
@@ -16,6 +17,14 @@ repositories {
 
 dependencies {
     testImplementation(kotlin("test"))
+    testImplementation("org.junit.jupiter:junit-jupiter:5.9.1")
+}
+
+jmh {
+    jmhVersion.set("1.36")
+    // Report allocation rates (gc.alloc.rate.norm) next to every score
+    profilers.add("gc")
+    resultFormat.set("JSON")
 }
 
 tasks {
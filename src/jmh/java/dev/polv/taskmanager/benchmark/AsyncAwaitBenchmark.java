@@ -0,0 +1,54 @@
+package dev.polv.taskmanager.benchmark;
+
+import dev.polv.taskmanager.core.TaskChain;
+import dev.polv.taskmanager.core.TaskManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip latency of a {@code RUN_ASYNC_AWAIT} element: from the tick that submits the work
+ * to the tick that resumes the chain after it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncAwaitBenchmark {
+
+    @Param({"cached", "virtual"})
+    public String executor;
+
+    private TaskManager manager;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TaskManager.Builder builder = TaskManager.builder();
+        if (executor.equals("virtual")) {
+            builder.virtualThreads();
+        }
+        manager = builder.maxStepsPerTick(2).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public TaskChain roundTrip() {
+        TaskChain chain = TaskChain.create(manager)
+                .runAsyncAwait(ctx -> {})
+                .run(ctx -> {});
+        chain.start();
+
+        while (!chain.isFinished()) {
+            manager.tick();
+            Thread.onSpinWait();
+        }
+        return chain;
+    }
+
+}
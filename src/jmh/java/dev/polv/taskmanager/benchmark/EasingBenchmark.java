@@ -0,0 +1,75 @@
+package dev.polv.taskmanager.benchmark;
+
+import dev.polv.taskmanager.core.elements.TimedFunctionElement;
+import dev.polv.taskmanager.utils.math.Easing;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of evaluating a {@link TimedFunctionElement}, and of the {@link Easing} curves on their own,
+ * one value at a time and in bulk, with and without a lookup table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EasingBenchmark {
+
+    private static final int FRAMES = 1024;
+    private static final long DURATION_NANOS = Duration.ofSeconds(1).toNanos();
+
+    @Param({"LINEAR", "EASE_INOUT_CUBIC", "EASE_OUT_SINE", "EASE_INOUT_EXPO", "EASE_INOUT_CIRC"})
+    public String easing;
+
+    @Param({"false", "true"})
+    public boolean lookupTable;
+
+    private Easing curve;
+    private TimedFunctionElement element;
+    private double[] progress;
+    private double[] values;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        curve = Easing.getValues().get(easing);
+        if (lookupTable) {
+            curve = curve.withLookupTable();
+        }
+        element = new TimedFunctionElement((ctx, value) -> {}, Duration.ofNanos(DURATION_NANOS), curve);
+
+        progress = new double[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            progress[i] = (double) i / (FRAMES - 1);
+        }
+        values = new double[FRAMES];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void easing(Blackhole blackhole) {
+        for (int i = 0; i < FRAMES; i++) {
+            blackhole.consume(curve.getValue(progress[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public double[] bulk() {
+        curve.evaluate(progress, values);
+        return values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void timedElement(Blackhole blackhole) {
+        for (int i = 0; i < FRAMES; i++) {
+            blackhole.consume(element.getValue(0L, i * (DURATION_NANOS / FRAMES)));
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package dev.polv.taskmanager.benchmark;
+
+import dev.polv.taskmanager.core.TaskChain;
+import dev.polv.taskmanager.core.TaskManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of starting chains from many threads while one thread keeps ticking the manager,
+ * like async workers scheduling follow-up work on a game server.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegisterBenchmark {
+
+    private TaskManager manager;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        manager = TaskManager.create();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        manager.tick();
+        manager.shutdown();
+    }
+
+    @Benchmark
+    @Group("register")
+    @GroupThreads(7)
+    public TaskChain start() {
+        TaskChain chain = TaskChain.create(manager).run(ctx -> {});
+        chain.start();
+        return chain;
+    }
+
+    @Benchmark
+    @Group("register")
+    @GroupThreads(1)
+    public void tick() {
+        manager.tick();
+    }
+
+}
@@ -0,0 +1,68 @@
+package dev.polv.taskmanager.benchmark;
+
+import dev.polv.taskmanager.core.TaskChain;
+import dev.polv.taskmanager.core.TaskManager;
+import dev.polv.taskmanager.core.clock.ManualClock;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single {@link TaskManager#tick()} with many registered chains.
+ * <br><br>
+ * {@code idle} chains sleep in a long wait, so a tick shouldn't touch them.
+ * {@code due} chains repeat with no delay, so every tick runs all of them.
+ * <br><br>
+ * Ticking is expected to be allocation free in both modes: {@code gc.alloc.rate.norm} should stay at ~0 B/op.
+ * {@code TickAllocationTest} checks the same setups on every build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TickBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int chains;
+
+    @Param({"idle", "due"})
+    public String mode;
+
+    private ManualClock clock;
+    private TaskManager manager;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clock = new ManualClock();
+        manager = TaskManager.builder().clock(clock).build();
+
+        for (int i = 0; i < chains; i++) {
+            TaskChain chain = TaskChain.create(manager).run(ctx -> {});
+            if (mode.equals("idle")) {
+                chain.timeout(Duration.ofDays(1)).run(ctx -> {}).start();
+            } else {
+                chain.repeat(Duration.ZERO, Duration.ZERO);
+            }
+        }
+
+        // Drain the submissions and get every chain past its first elements, so idle chains are asleep
+        manager.tick();
+        clock.advance(1_000_000L);
+        manager.tick();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public void tick() {
+        clock.advance(1_000_000L);
+        manager.tick();
+    }
+
+}
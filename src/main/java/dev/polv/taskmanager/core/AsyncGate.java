@@ -0,0 +1,107 @@
+package dev.polv.taskmanager.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission state of one {@link AsyncLimit}, shared by every shard of a manager.
+ * <br><br>
+ * The rate is enforced with the generic cell rate algorithm: a single theoretical arrival time moves forward by the emission
+ * interval for every permit, so taking one is a compare-and-set and the time until the next permit comes for free.
+ * <br><br>
+ * Chains turned down by the concurrency limit wait in a queue, and a runner returning its slot wakes one of them up.
+ * <br><br>
+ * A parallel element takes a slot and a permit for each of its branches at once. One wider than the concurrency limit
+ * only goes through while nothing else runs, and one needing more permits than the burst goes through once the first
+ * permit is free and pushes the next ones back, so it is never turned down for good.
+ */
+final class AsyncGate {
+
+    private final AsyncLimit limit;
+    private final int maxConcurrent;
+    private final AtomicInteger running;
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong arrival;
+    private final ConcurrentLinkedQueue<TaskChain> waiters;
+
+    AsyncGate(AsyncLimit limit, long now) {
+        this.limit = limit;
+        this.maxConcurrent = limit.getMaxConcurrent();
+        this.running = new AtomicInteger();
+        this.interval = limit.getPermits() > 0 ? Math.max(1, limit.getPeriod().toNanos() / limit.getPermits()) : 0;
+        this.tolerance = interval * (limit.getBurst() - 1);
+        this.arrival = new AtomicLong(now);
+        this.waiters = new ConcurrentLinkedQueue<>();
+    }
+
+    AsyncLimit.Policy getPolicy() {
+        return limit.getPolicy();
+    }
+
+    /**
+     * @param slots Amount of concurrency slots to take
+     * @return {@code true} if the slots were taken, or the limit has no concurrency bound
+     */
+    boolean tryEnter(int slots) {
+        if (maxConcurrent == 0) return true;
+        while (true) {
+            int current = running.get();
+            if (current + slots > maxConcurrent && current > 0) return false;
+            if (running.compareAndSet(current, current + slots)) return true;
+        }
+    }
+
+    /**
+     * Gives back slots taken with {@link #tryEnter(int)} and wakes up a parked chain.
+     */
+    void exit(int slots) {
+        if (maxConcurrent == 0) return;
+        running.addAndGet(-slots);
+        wakeOne();
+    }
+
+    /**
+     * @param now The current time of the manager's clock
+     * @param permits Amount of permits to take
+     * @return {@code 0} if the permits were taken, otherwise the time until the next one
+     */
+    long tryTake(long now, int permits) {
+        if (interval == 0) return 0;
+        while (true) {
+            long current = arrival.get();
+            long base = current - now > 0 ? current : now;
+            long wait = base - tolerance - now;
+            if (wait > 0) return wait;
+            if (arrival.compareAndSet(current, base + interval * permits)) return 0;
+        }
+    }
+
+    /**
+     * Gives back the permits taken with {@link #tryTake(long, int)} for an element that didn't run after all.
+     */
+    void refund(int permits) {
+        if (interval == 0) return;
+        arrival.addAndGet(-interval * permits);
+    }
+
+    /**
+     * Queues a chain turned down by the concurrency limit until a slot is free.
+     * Checks again after queuing it, so a slot given back meanwhile isn't missed.
+     */
+    void park(TaskChain chain) {
+        waiters.offer(chain);
+        if (running.get() < maxConcurrent) {
+            wakeOne();
+        }
+    }
+
+    private void wakeOne() {
+        TaskChain chain;
+        while ((chain = waiters.poll()) != null) {
+            // Chains cancelled while parked are left in the queue and skipped here
+            if (chain.wakeThrottled()) return;
+        }
+    }
+}
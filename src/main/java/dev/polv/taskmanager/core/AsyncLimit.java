@@ -0,0 +1,146 @@
+package dev.polv.taskmanager.core;
+
+import java.time.Duration;
+
+/**
+ * Admission limit for the async elements of a {@link TaskManager}, or of a group of chains.
+ * Set with {@link TaskManager.Builder#asyncLimit(AsyncLimit)} and {@link TaskManager.Builder#asyncLimit(String, AsyncLimit)}.
+ * <br><br>
+ * A limit can bound the amount of async elements running at once, the rate at which they are submitted, or both.
+ * The rate is a token bucket: {@code permits} per {@code period} on average, with bursts of up to {@code burst} at once.
+ * A parallel element takes a slot and a permit for each of its branches, all at once.
+ * <br><br>
+ * Limits are immutable, every method returns a new one.
+ */
+public final class AsyncLimit {
+
+    /**
+     * What happens to an async element over the limit.
+     */
+    public enum Policy {
+        /**
+         * The chain waits on the element. Over the rate, it sleeps until the next permit. Over the concurrency, it is parked
+         * until a running element of the same limit returns.
+         */
+        DELAY,
+        /**
+         * The element is skipped and the chain goes on.
+         */
+        DROP,
+        /**
+         * The element runs right away on the thread ticking the chain, as if it wasn't async.
+         */
+        RUN_ON_TICK_THREAD
+    }
+
+    private final int maxConcurrent;
+    private final int permits;
+    private final long periodNanos;
+    private final int burst;
+    private final Policy policy;
+
+    private AsyncLimit(int maxConcurrent, int permits, long periodNanos, int burst, Policy policy) {
+        this.maxConcurrent = maxConcurrent;
+        this.permits = permits;
+        this.periodNanos = periodNanos;
+        this.burst = burst;
+        this.policy = policy;
+    }
+
+    /**
+     * @param max Maximum amount of async elements running or queued in the executor at once
+     * @return new {@link AsyncLimit}, delaying elements over the limit
+     */
+    public static AsyncLimit maxConcurrent(int max) {
+        return new AsyncLimit(0, 0, 0, 0, Policy.DELAY).andMaxConcurrent(max);
+    }
+
+    /**
+     * @param permits Amount of async elements submitted per period
+     * @param period Period of the rate
+     * @return new {@link AsyncLimit}, delaying elements over the limit
+     */
+    public static AsyncLimit rate(int permits, Duration period) {
+        return new AsyncLimit(0, 0, 0, 0, Policy.DELAY).andRate(permits, period);
+    }
+
+    /**
+     * @param max Maximum amount of async elements running or queued in the executor at once
+     * @return new {@link AsyncLimit}
+     */
+    public AsyncLimit andMaxConcurrent(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be at least 1");
+        }
+        return new AsyncLimit(max, permits, periodNanos, burst, policy);
+    }
+
+    /**
+     * @param permits Amount of async elements submitted per period
+     * @param period Period of the rate
+     * @return new {@link AsyncLimit}, with bursts of one element
+     */
+    public AsyncLimit andRate(int permits, Duration period) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("Rate must allow at least 1 permit");
+        }
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return new AsyncLimit(maxConcurrent, permits, period.toNanos(), 1, policy);
+    }
+
+    /**
+     * @param burst Amount of async elements that can be submitted at once while the rate has permits left
+     * @return new {@link AsyncLimit}
+     */
+    public AsyncLimit burst(int burst) {
+        if (permits == 0) {
+            throw new IllegalStateException("Limit has no rate");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+        return new AsyncLimit(maxConcurrent, permits, periodNanos, burst, policy);
+    }
+
+    /**
+     * @param policy What happens to an async element over the limit
+     * @return new {@link AsyncLimit}
+     */
+    public AsyncLimit whenLimited(Policy policy) {
+        return new AsyncLimit(maxConcurrent, permits, periodNanos, burst, policy);
+    }
+
+    /**
+     * @return Maximum amount of async elements running at once, {@code 0} if unbounded
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return Amount of async elements submitted per period, {@code 0} if unbounded
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+    public Duration getPeriod() {
+        return Duration.ofNanos(periodNanos);
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLimit[" + (maxConcurrent > 0 ? "maxConcurrent " + maxConcurrent + ", " : "")
+                + (permits > 0 ? permits + " per " + getPeriod() + ", burst " + burst + ", " : "") + policy + "]";
+    }
+}
@@ -0,0 +1,187 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.FunctionElement;
+import dev.polv.taskmanager.core.elements.TaskElement;
+import dev.polv.taskmanager.core.metrics.TaskMetrics;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reusable task submitted to the executor for an async element of a {@link TaskChain}.
+ * <br><br>
+ * A chain keeps one runner per async element, so running the same element again (a repeating chain,
+ * for instance) doesn't allocate a new task. A runner whose previous run hasn't finished yet can't be
+ * reused, and the chain falls back to a fresh one.
+ * <br><br>
+ * A runner remembers the thread running it, so cancelling the chain can interrupt it. A runner cancelled
+ * before it starts doesn't run at all.
+ */
+class AsyncRunner implements Runnable {
+
+    protected final TaskChain chain;
+    private final TaskElement element;
+    private final boolean await;
+    private volatile boolean busy;
+    private long submittedAt;
+    private AsyncGate managerGate;
+    private AsyncGate groupGate;
+    private int token;
+
+    // Guarded by this
+    private Thread thread;
+    private boolean started;
+    private boolean cancelled;
+
+    AsyncRunner(TaskChain chain, TaskElement element, boolean await) {
+        this.chain = chain;
+        this.element = element;
+        this.await = await;
+        this.busy = false;
+    }
+
+    /**
+     * Only called from the tick thread.
+     *
+     * @return {@code true} if the runner was idle and is now reserved for a submission
+     */
+    boolean acquire() {
+        if (busy) return false;
+        busy = true;
+        synchronized (this) {
+            started = false;
+            cancelled = false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a runner that was cancelled and removed from the executor's queue before it started.
+     */
+    void discard() {
+        leaveGates();
+        busy = false;
+    }
+
+    /**
+     * @param interrupt Whether to interrupt the thread running it
+     * @return {@code true} if the runner already started
+     */
+    synchronized boolean cancel(boolean interrupt) {
+        cancelled = true;
+        if (interrupt && thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+        }
+        return started;
+    }
+
+    /**
+     * Only called from the tick thread, before handing the runner to the executor.
+     *
+     * @param submittedAt {@link System#nanoTime()} of the submission, to measure the time spent queued
+     */
+    void setSubmittedAt(long submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    /**
+     * Only called from the tick thread, before handing the runner to the executor.
+     *
+     * @param managerGate Limit of the manager the runner took a slot from, or {@code null}
+     * @param groupGate Limit of the chain's group the runner took a slot from, or {@code null}
+     * @param token Token the chain parked on the runner with, {@code 0} if it doesn't wait on it
+     */
+    void admitted(AsyncGate managerGate, AsyncGate groupGate, int token) {
+        this.managerGate = managerGate;
+        this.groupGate = groupGate;
+        this.token = token;
+    }
+
+    /**
+     * Gives back the slots taken when the runner was admitted, letting a parked chain through.
+     */
+    private void leaveGates() {
+        AsyncGate managerGate = this.managerGate;
+        AsyncGate groupGate = this.groupGate;
+        this.managerGate = null;
+        this.groupGate = null;
+        if (managerGate != null) managerGate.exit(1);
+        if (groupGate != null) groupGate.exit(1);
+    }
+
+    boolean isFor(TaskElement element) {
+        return this.element == element;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (cancelled) {
+                leaveGates();
+                chain.untrack(this);
+                busy = false;
+                return;
+            }
+            started = true;
+            thread = Thread.currentThread();
+        }
+
+        TaskManager manager = chain.getManager();
+        TaskMetrics metrics = manager != null && manager.isMetricsEnabled() ? manager.getMetrics() : null;
+        long start = 0;
+        if (metrics != null) {
+            start = System.nanoTime();
+            metrics.onAsyncStarted(start - submittedAt);
+        }
+
+        Throwable error = null;
+        try {
+            work(chain.getContext());
+        } catch (Throwable e) {
+            // Kept off the executor, so its threads survive and the chain decides what the error means
+            error = e;
+        } finally {
+            boolean wasCancelled;
+            synchronized (this) {
+                thread = null;
+                wasCancelled = cancelled;
+            }
+            if (wasCancelled) {
+                // Nothing interrupts it after thread is cleared, so this only drops our own interrupt before the thread is reused
+                Thread.interrupted();
+            }
+
+            if (metrics != null) {
+                metrics.onElement(element.getType(), System.nanoTime() - start);
+            }
+            leaveGates();
+            chain.untrack(this);
+            busy = false;
+            if (manager != null && !wasCancelled) {
+                done(manager, error);
+            }
+        }
+    }
+
+    /**
+     * Runs the element on the executor thread.
+     */
+    protected void work(Context context) {
+        ((FunctionElement) element).accept(context);
+    }
+
+    /**
+     * Called once the work returned or threw, unless the runner was cancelled.
+     * An awaited element that threw stops its chain, like a failed stage. Otherwise the error goes to the
+     * uncaught exception handler of the executor thread, which keeps running.
+     *
+     * @param error What the work threw, or {@code null}
+     */
+    protected void done(TaskManager manager, @Nullable Throwable error) {
+        if (await) {
+            chain.runnerFinished(token, error);
+        } else if (error != null) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, error);
+        }
+    }
+
+}
@@ -0,0 +1,329 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.journal.Journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the state of persistent chains (see {@link TaskChain#persistent(String)}) in a {@link Journal}.
+ * <br><br>
+ * Chains only mark themselves as changed. The manager calls {@link #flush()} at the end of every tick, which takes a
+ * {@link Snapshot} of every changed chain once, so a chain running several elements in a tick costs a single record.
+ * A chain being ticked by another thread isn't waited on, it is taken again on the next flush.
+ * <br><br>
+ * Snapshots only copy references, the values are serialized by a writer thread, which is also the only one touching
+ * the {@link Journal}: its compactions and the forcing of its segments never hold up a tick. A write that fails is
+ * rethrown by the next flush. The writer thread is only started by the first flush with something to write.
+ * <br><br>
+ * The saved state is the index of the current element, the wall-clock time of its next action and every
+ * {@link Serializable} value of its {@link Context}, typed ones by the name of their {@link ContextKey}. Other values are not saved.
+ * Values are serialized after the tick, so they shouldn't be changed in place afterwards.
+ * <br><br>
+ * As the time of the next action is a wall-clock deadline, the time the manager was down counts against the waits:
+ * a chain whose deadline passed while it was stopped runs its element on the first tick after it's resumed.
+ */
+class ChainJournal implements Runnable {
+
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final int VERSION = 2;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private final TaskManager manager;
+    private final Journal journal;
+    private final Map<String, byte[]> saved;
+    private final ConcurrentLinkedQueue<TaskChain> dirty;
+    private final ConcurrentLinkedQueue<Snapshot> pending;
+    private final ReentrantLock flushLock;
+    private final List<TaskChain> busy;
+    private final Thread writer;
+    // Guarded by flushLock
+    private boolean writerStarted;
+    private volatile boolean running;
+    private volatile IOException failure;
+
+    private ChainJournal(TaskManager manager, Journal journal) {
+        this.manager = manager;
+        this.journal = journal;
+        this.saved = new HashMap<>(journal.getValues());
+        this.dirty = new ConcurrentLinkedQueue<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.flushLock = new ReentrantLock();
+        this.busy = new ArrayList<>();
+        this.writer = new Thread(this, "PolTaskManager-" + manager.getId() + "-journal");
+        this.writer.setDaemon(true);
+        this.writerStarted = false;
+        this.running = true;
+    }
+
+    static ChainJournal open(TaskManager manager, Path directory) {
+        try {
+            return new ChainJournal(manager, Journal.open(directory, SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open the journal in " + directory, e);
+        }
+    }
+
+    /**
+     * @return Names of the chains saved in the journal that haven't been started again yet
+     */
+    synchronized Set<String> getSavedNames() {
+        return Collections.unmodifiableSet(new HashSet<>(saved.keySet()));
+    }
+
+    /**
+     * Moves a chain that is being started to the state saved under its name, if there is one.
+     *
+     * @param chain The persistent chain
+     * @param now The current time of the manager's clock
+     * @return {@code true} if the chain was restored
+     */
+    synchronized boolean restore(TaskChain chain, long now) {
+        byte[] state = saved.remove(chain.getPersistentName());
+        if (state == null) return false;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            if (in.readInt() != VERSION) return false;
+
+            int index = in.readInt();
+            long remainingMillis = Math.max(0, in.readLong() - System.currentTimeMillis());
+            Map<String, Object> returnData = readValues(in);
+            Map<String, Object> typedData = readValues(in);
+
+            return chain.restore(index, now + remainingMillis * NANOS_PER_MILLI, returnData, typedData);
+        } catch (IOException e) {
+            // Corrupted state, the chain starts over
+            return false;
+        }
+    }
+
+    private static Map<String, Object> readValues(DataInputStream in) throws IOException {
+        int entries = in.readInt();
+        Map<String, Object> data = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = in.readUTF();
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            try (ObjectInputStream object = new ObjectInputStream(new ByteArrayInputStream(value))) {
+                data.put(key, object.readObject());
+            } catch (ClassNotFoundException | IOException ignored) {
+                // The class changed or is gone, the rest of the context is still usable
+            }
+        }
+        return data;
+    }
+
+    void markDirty(TaskChain chain) {
+        if (chain.markJournalDirty()) {
+            dirty.offer(chain);
+        }
+    }
+
+    /**
+     * Takes a snapshot of every chain that changed since the last flush, and hands them to the writer thread.
+     * Returns right away if another thread is flushing, the chains it missed are taken by the next flush.
+     */
+    void flush() {
+        if (!flushLock.tryLock()) return;
+        try {
+            takeSnapshots(false);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void takeSnapshots(boolean wait) {
+        IOException failure = this.failure;
+        if (failure != null) {
+            this.failure = null;
+            throw new UncheckedIOException("Couldn't write to the journal", failure);
+        }
+        if (dirty.isEmpty()) return;
+
+        long now = manager.getClock().nanoTime();
+        TaskChain chain;
+        while ((chain = dirty.poll()) != null) {
+            chain.clearJournalDirty();
+            Snapshot snapshot = chain.journalState(now, wait);
+            if (snapshot != null) {
+                pending.offer(snapshot);
+            } else {
+                busy.add(chain);
+            }
+        }
+        for (int i = 0; i < busy.size(); i++) {
+            markDirty(busy.get(i));
+        }
+        busy.clear();
+        if (!writerStarted) {
+            // Started here rather than when the journal is opened, so the manager is fully built by then
+            writerStarted = true;
+            writer.start();
+        }
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Takes the last snapshots, waits for the writer thread to write them and closes the journal.
+     */
+    void close() {
+        boolean started;
+        flushLock.lock();
+        try {
+            takeSnapshots(true);
+            started = writerStarted;
+        } finally {
+            flushLock.unlock();
+        }
+
+        running = false;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (started && writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't close the journal", e);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Couldn't write to the journal", failure);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            // Read before draining, so the snapshots taken by close() are written before leaving
+            boolean stopping = !running;
+            Snapshot snapshot;
+            while ((snapshot = pending.poll()) != null) {
+                write(snapshot);
+            }
+            if (stopping) return;
+            LockSupport.park(this);
+        }
+    }
+
+    private void write(Snapshot snapshot) {
+        try {
+            if (snapshot.returnData != null) {
+                journal.put(snapshot.name, encode(snapshot));
+            } else {
+                journal.remove(snapshot.name);
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * @param snapshot State of a running chain
+     * @return The encoded state
+     */
+    static byte[] encode(Snapshot snapshot) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.index);
+            out.writeLong(snapshot.nextActionMillis);
+            writeValues(out, snapshot.returnData);
+            writeValues(out, snapshot.typedData);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeValues(DataOutputStream out, Map<String, Object> data) throws IOException {
+        Map<String, byte[]> values = new HashMap<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (!(entry.getValue() instanceof Serializable)) continue;
+
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            try (ObjectOutputStream object = new ObjectOutputStream(value)) {
+                object.writeObject(entry.getValue());
+            } catch (IOException | RuntimeException ignored) {
+                // Holds something that isn't serializable, or was changed while it was written
+                continue;
+            }
+            values.put(entry.getKey(), value.toByteArray());
+        }
+
+        out.writeInt(values.size());
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+    }
+
+    /**
+     * State of a persistent chain, taken on the thread ticking it.
+     */
+    static final class Snapshot {
+
+        private final String name;
+        private final int index;
+        private final long nextActionMillis;
+        private final Map<String, Object> returnData;
+        private final Map<String, Object> typedData;
+
+        private Snapshot(String name, int index, long nextActionMillis, Map<String, Object> returnData, Map<String, Object> typedData) {
+            this.name = name;
+            this.index = index;
+            this.nextActionMillis = nextActionMillis;
+            this.returnData = returnData;
+            this.typedData = typedData;
+        }
+
+        /**
+         * @param name Name of the chain
+         * @param index Index of the current element
+         * @param delayNanos Time until the next action
+         * @param context The chain's {@link Context}, whose values are copied by reference
+         * @return The state of a running chain
+         */
+        static Snapshot of(String name, int index, long delayNanos, Context context) {
+            return new Snapshot(name, index, System.currentTimeMillis() + delayNanos / NANOS_PER_MILLI,
+                    new HashMap<>(context.getReturnData()), context.getTypedData());
+        }
+
+        /**
+         * @param name Name of the chain
+         * @return The state of a chain that isn't running anymore, removing the saved one
+         */
+        static Snapshot removed(String name) {
+            return new Snapshot(name, 0, 0, null, null);
+        }
+    }
+}
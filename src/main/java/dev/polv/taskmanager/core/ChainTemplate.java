@@ -0,0 +1,171 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.TaskElement;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shape of a {@link TaskChain}, to spawn the same chain many times.
+ * <br><br>
+ * Every chain spawned from a template shares its elements, which keep no state of their own. They are frozen when the template
+ * is compiled, so their setters throw instead of changing every spawned chain at once. The state of each run (current
+ * element, next action, {@link Context}) lives in the chain. Chains started with {@link #start(TaskManager)} are fire-and-forget:
+ * once they finish, or are cancelled, and their async work is done, they are reset and kept in a pool, and the next start reuses them
+ * instead of allocating a new chain and context.
+ * <pre>{@code
+ * static final ChainTemplate FLASH = ChainTemplate.of(TaskChain.create(null)
+ *         .runTimed((ctx, t) -> setTint(t), Duration.ofMillis(200), Easing.EASE_OUT_QUAD)
+ *         .run(ctx -> clearTint()));
+ *
+ * FLASH.start(taskManager);
+ * }</pre>
+ */
+public class ChainTemplate {
+
+    private static final int DEFAULT_POOL_SIZE = 256;
+
+    private final List<TaskElement> elements;
+    private final TaskPriority priority;
+    private final int maxStepsPerTick;
+    private final Object affinity;
+    private final boolean mainThreadOnly;
+    private final String group;
+
+    private final TaskChain[] pool;
+    private int pooled;
+
+    private ChainTemplate(TaskChain chain, int poolSize) {
+        this.elements = Collections.unmodifiableList(new ArrayList<>(chain.getElementsForTemplate()));
+        for (TaskElement element : elements) {
+            element.freeze();
+        }
+        this.priority = chain.getPriority();
+        this.maxStepsPerTick = chain.getMaxStepsPerTick();
+        this.affinity = chain.getAffinity();
+        this.mainThreadOnly = chain.isMainThreadOnly();
+        this.group = chain.getGroup();
+        this.pool = new TaskChain[poolSize];
+        this.pooled = 0;
+    }
+
+    /**
+     * Compiles a chain into a template. The chain is never run by the template, but its elements are frozen.
+     *
+     * @param chain Chain with the elements and settings to copy. It doesn't need a {@link TaskManager}.
+     * @return new {@link ChainTemplate}
+     */
+    public static ChainTemplate of(TaskChain chain) {
+        return of(chain, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param chain Chain with the elements and settings to copy. It doesn't need a {@link TaskManager}.
+     * @param poolSize Maximum amount of finished chains kept for reuse
+     * @return new {@link ChainTemplate}
+     */
+    public static ChainTemplate of(TaskChain chain, int poolSize) {
+        if (chain.getPersistentName() != null) {
+            throw new IllegalArgumentException("Persistent chains can't be templates, their names must be unique");
+        }
+        if (chain.getElementsForTemplate().isEmpty()) {
+            throw new IllegalArgumentException("TaskChain has no elements");
+        }
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("Pool size can't be negative");
+        }
+        return new ChainTemplate(chain, poolSize);
+    }
+
+    /**
+     * Creates a new chain with the elements of this template, owned by the caller and never pooled.
+     * It can't get more elements.
+     *
+     * @param manager The {@link TaskManager} to register it to
+     * @return new {@link TaskChain}, not started yet
+     */
+    public TaskChain spawn(TaskManager manager) {
+        return TaskChain.fromTemplate(this, manager, false);
+    }
+
+    /**
+     * Starts a chain with the elements of this template, reusing a finished one when possible.
+     * The chain isn't returned, since it goes back to the pool once it finishes.
+     *
+     * @param manager The {@link TaskManager} to run it
+     */
+    public void start(TaskManager manager) {
+        acquire(manager)._start();
+    }
+
+    /**
+     * Schedules a chain with the elements of this template, reusing a finished one when possible.
+     *
+     * @param manager The {@link TaskManager} to run it
+     * @param time Time to wait before starting the chain
+     */
+    public void schedule(TaskManager manager, Duration time) {
+        acquire(manager)._schedule(time);
+    }
+
+    private TaskChain acquire(TaskManager manager) {
+        TaskChain chain = null;
+        synchronized (this) {
+            if (pooled > 0) {
+                chain = pool[--pooled];
+                pool[pooled] = null;
+            }
+        }
+        if (chain == null) {
+            return TaskChain.fromTemplate(this, manager, true);
+        }
+        if (chain.getManager() != manager) {
+            chain.setManager(manager);
+        }
+        return chain;
+    }
+
+    /**
+     * Takes back a finished chain. Called from the thread ticking it, once it has been reset.
+     */
+    protected void release(TaskChain chain) {
+        synchronized (this) {
+            if (pooled < pool.length) {
+                pool[pooled++] = chain;
+            }
+        }
+    }
+
+    /**
+     * @return Amount of finished chains waiting to be reused
+     */
+    public synchronized int getPooled() {
+        return pooled;
+    }
+
+    protected List<TaskElement> getElements() {
+        return elements;
+    }
+
+    public TaskPriority getPriority() {
+        return priority;
+    }
+
+    public int getMaxStepsPerTick() {
+        return maxStepsPerTick;
+    }
+
+    public Object getAffinity() {
+        return affinity;
+    }
+
+    public boolean isMainThreadOnly() {
+        return mainThreadOnly;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+}
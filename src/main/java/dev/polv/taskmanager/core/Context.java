@@ -1,15 +1,49 @@
 package dev.polv.taskmanager.core;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Data shared by the elements of a {@link TaskChain}.
+ * <br><br>
+ * Values saved with a {@link ContextKey} live in an array indexed by the key, and values saved with a
+ * {@link String} key in a map. Both are only allocated on their first write, so a chain that saves nothing pays for neither.
+ * Reads and writes never lock. Writes from different threads are safe, but when two elements write the same
+ * key at once only one of the values is kept.
+ * <br><br>
+ * The array only grows under the context's lock. The grower seals every slot of the old array as it copies it,
+ * so a write racing the grow fails its compare-and-set and is retried on the new array instead of being lost.
+ */
 public class Context {
 
+    private static final VarHandle RETURN_DATA;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+    /**
+     * Left in the slots of an array that was replaced by a bigger one.
+     */
+    private static final Object MOVED = new Object();
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            RETURN_DATA = lookup.findVarHandle(Context.class, "returnData", ConcurrentHashMap.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final TaskChain chain;
-    private final ConcurrentHashMap<String, Object> returnData;
+    private volatile Object[] slots;
+    private volatile ConcurrentHashMap<String, Object> returnData;
 
     protected Context(TaskChain chain) {
         this.chain = chain;
-        this.returnData = new ConcurrentHashMap<>();
+        this.slots = null;
+        this.returnData = null;
     }
 
     /**
@@ -19,6 +53,115 @@ public class Context {
         chain._cancel();
     }
 
+    /**
+     * Long async functions should check it now and then and return early once it is {@code true}.
+     * Blocking calls are also interrupted when the chain is cancelled.
+     *
+     * @return {@code true} if the {@link TaskChain} was cancelled
+     */
+    public boolean isCancelled() {
+        return chain.isCancelled();
+    }
+
+    /**
+     * @param key The {@link ContextKey} of the data
+     * @return The data, or {@code null} if none was saved
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ContextKey<T> key) {
+        Object[] slots = this.slots;
+        int index = key.getIndex();
+        while (true) {
+            if (slots == null || index >= slots.length) return null;
+            Object value = SLOT.getAcquire(slots, index);
+            if (value != MOVED) return (T) value;
+            slots = grownFrom(slots);
+        }
+    }
+
+    /**
+     * @param key The {@link ContextKey} of the data
+     * @param defaultValue Value returned if none was saved
+     * @return The data, or {@code defaultValue} if none was saved
+     */
+    public <T> T getOrDefault(ContextKey<T> key, T defaultValue) {
+        T value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Save data in the {@link TaskChain}
+     *
+     * @param key The {@link ContextKey} of the data
+     * @param value The data, or {@code null} to remove it
+     */
+    public <T> void put(ContextKey<T> key, T value) {
+        int index = key.getIndex();
+        Object[] slots = slotsFor(index);
+        while (true) {
+            Object current = SLOT.getVolatile(slots, index);
+            if (current == MOVED) {
+                // Grown while writing, the value goes to the new array
+                slots = grownFrom(slots);
+            } else if (SLOT.compareAndSet(slots, index, current, value)) {
+                break;
+            }
+        }
+        chain.journalChanged();
+    }
+
+    /**
+     * @param key The {@link ContextKey} of the data
+     * @return {@code true} if the {@link TaskChain} has data saved under the key
+     */
+    public boolean has(ContextKey<?> key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key The {@link ContextKey} of the data
+     * @return The data that was saved, or {@code null}
+     */
+    public <T> T remove(ContextKey<T> key) {
+        T value = get(key);
+        if (value != null) {
+            put(key, null);
+        }
+        return value;
+    }
+
+    private Object[] slotsFor(int index) {
+        Object[] slots = this.slots;
+        if (slots != null && index < slots.length) return slots;
+
+        synchronized (this) {
+            slots = this.slots;
+            if (slots != null && index < slots.length) return slots;
+
+            // Sized from the keys this chain writes, doubling so a chain writing many keys only copies a few times
+            Object[] grown = new Object[Math.max(index + 1, slots == null ? 4 : slots.length << 1)];
+            if (slots != null) {
+                for (int i = 0; i < slots.length; i++) {
+                    grown[i] = SLOT.getAndSet(slots, i, MOVED);
+                }
+            }
+            this.slots = grown;
+            return grown;
+        }
+    }
+
+    /**
+     * @param slots An array that was sealed by a grow
+     * @return The array that replaced it, once the grow published it
+     */
+    private Object[] grownFrom(Object[] slots) {
+        Object[] current;
+        while ((current = this.slots) == slots) {
+            Thread.onSpinWait();
+        }
+        return current;
+    }
+
     /**
      * Get data saved of the {@link TaskChain}
      *
@@ -26,7 +169,8 @@ public class Context {
      * @return The data in {@link Object}
      */
     public Object getReturnData(String key) {
-        return returnData.get(key);
+        ConcurrentHashMap<String, Object> returnData = this.returnData;
+        return returnData != null ? returnData.get(key) : null;
     }
 
     /**
@@ -36,7 +180,8 @@ public class Context {
      * @param value The data in {@link Object}
      */
     public void putReturnData(String key, Object value) {
-        this.returnData.put(key, value);
+        returnData().put(key, value);
+        chain.journalChanged();
     }
 
     /**
@@ -46,7 +191,110 @@ public class Context {
      * @return {@code true} if the {@link TaskChain} has data saved, otherwise {@code false}
      */
     public boolean hasReturnData(String key) {
-        return this.returnData.containsKey(key);
+        ConcurrentHashMap<String, Object> returnData = this.returnData;
+        return returnData != null && returnData.containsKey(key);
+    }
+
+    private ConcurrentHashMap<String, Object> returnData() {
+        ConcurrentHashMap<String, Object> returnData = this.returnData;
+        if (returnData != null) return returnData;
+
+        ConcurrentHashMap<String, Object> created = new ConcurrentHashMap<>();
+        if (RETURN_DATA.compareAndSet(this, null, created)) return created;
+        return this.returnData;
+    }
+
+    /**
+     * Drops every value, keeping the storage already allocated. Only called on a chain that isn't running.
+     */
+    protected void clear() {
+        Object[] slots = this.slots;
+        if (slots != null) {
+            for (int i = 0; i < slots.length; i++) {
+                SLOT.setRelease(slots, i, null);
+            }
+        }
+        ConcurrentHashMap<String, Object> returnData = this.returnData;
+        if (returnData != null) {
+            returnData.clear();
+        }
+    }
+
+    /**
+     * Copies every value of another context, replacing the values saved under the same keys.
+     *
+     * @param other Context to read
+     */
+    protected void merge(Context other) {
+        Object[] slots = other.slots;
+        if (slots != null) {
+            for (int i = 0; i < slots.length; i++) {
+                Object value = SLOT.getAcquire(slots, i);
+                if (value == MOVED) {
+                    // Grown while reading, the values already copied are read again from the new array
+                    slots = other.grownFrom(slots);
+                    i = -1;
+                } else if (value != null) {
+                    @SuppressWarnings("unchecked")
+                    ContextKey<Object> key = (ContextKey<Object>) ContextKey.forIndex(i);
+                    put(key, value);
+                }
+            }
+        }
+        ConcurrentHashMap<String, Object> returnData = other.returnData;
+        if (returnData != null && !returnData.isEmpty()) {
+            returnData().putAll(returnData);
+            chain.journalChanged();
+        }
+    }
+
+    /**
+     * @return Every value saved with a {@link String} key, backed by this context
+     */
+    protected Map<String, Object> getReturnData() {
+        ConcurrentHashMap<String, Object> returnData = this.returnData;
+        return returnData != null ? returnData : Collections.emptyMap();
+    }
+
+    /**
+     * @return A copy of every value saved with a {@link ContextKey}, by the name of the key
+     */
+    protected Map<String, Object> getTypedData() {
+        Object[] slots = this.slots;
+        if (slots == null) return Collections.emptyMap();
+
+        Map<String, Object> data = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            Object value = SLOT.getAcquire(slots, i);
+            if (value == MOVED) {
+                slots = grownFrom(slots);
+                data.clear();
+                i = -1;
+            } else if (value != null) {
+                data.put(ContextKey.forIndex(i).getName(), value);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Saves values read back from the journal. Typed values whose key doesn't exist, or has another type, are dropped.
+     *
+     * @param returnData Values saved with a {@link String} key
+     * @param typedData Values saved with a {@link ContextKey}, by the name of the key
+     */
+    @SuppressWarnings("unchecked")
+    protected void restore(Map<String, Object> returnData, Map<String, Object> typedData) {
+        if (!returnData.isEmpty()) {
+            returnData().putAll(returnData);
+        }
+        for (Map.Entry<String, Object> entry : typedData.entrySet()) {
+            ContextKey<Object> key = (ContextKey<Object>) ContextKey.forName(entry.getKey());
+            if (key != null && key.getType().isInstance(entry.getValue())) {
+                put(key, entry.getValue());
+            }
+        }
+        chain.journalChanged();
     }
 
 }
@@ -0,0 +1,95 @@
+package dev.polv.taskmanager.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed key for data saved in a {@link Context}.
+ * <br><br>
+ * Every key gets an index when it is created, and contexts keep their values in a small array indexed by it,
+ * so reading and writing them is an array access instead of a hash lookup, and no cast is needed.
+ * Keys are meant to be created once and kept in constants:
+ * <pre>{@code
+ * static final ContextKey<Integer> DAMAGE = ContextKey.of("damage", Integer.class);
+ * }</pre>
+ * The name identifies the key in the journal of persistent chains. Typed values and values saved with
+ * {@link Context#putReturnData(String, Object)} are stored apart, even if the name is the same.
+ *
+ * @param <T> Type of the value
+ */
+public final class ContextKey<T> {
+
+    private static final Map<String, ContextKey<?>> BY_NAME = new HashMap<>();
+    private static volatile ContextKey<?>[] BY_INDEX = new ContextKey<?>[0];
+
+    private final String name;
+    private final Class<T> type;
+    private final int index;
+
+    private ContextKey(String name, Class<T> type, int index) {
+        this.name = name;
+        this.type = type;
+        this.index = index;
+    }
+
+    /**
+     * Creates a key, or returns the one created before with the same name.
+     *
+     * @param name Name of the key
+     * @param type Type of the value. Use the wrapper class of primitives.
+     * @param <T> Type of the value
+     * @return The {@link ContextKey} with that name
+     * @throws IllegalArgumentException If a key with that name but another type exists
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T> ContextKey<T> of(String name, Class<T> type) {
+        if (type.isPrimitive()) {
+            throw new IllegalArgumentException("Use the wrapper class of " + type);
+        }
+
+        ContextKey<?> existing = BY_NAME.get(name);
+        if (existing != null) {
+            if (existing.type != type) {
+                throw new IllegalArgumentException("Key " + name + " already exists with type " + existing.type.getName());
+            }
+            return (ContextKey<T>) existing;
+        }
+
+        ContextKey<?>[] keys = BY_INDEX;
+        ContextKey<T> key = new ContextKey<>(name, type, keys.length);
+        BY_NAME.put(name, key);
+        keys = Arrays.copyOf(keys, keys.length + 1);
+        keys[key.index] = key;
+        BY_INDEX = keys;
+        return key;
+    }
+
+    /**
+     * @return The key with that name, or {@code null} if none was created
+     */
+    static synchronized ContextKey<?> forName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    static ContextKey<?> forIndex(int index) {
+        return BY_INDEX[index];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "ContextKey[" + name + ": " + type.getSimpleName() + "]";
+    }
+}
@@ -0,0 +1,24 @@
+package dev.polv.taskmanager.core;
+
+/**
+ * What happens when a chain is started under a key (see {@link TaskChain#dedupe(String, DedupePolicy)}) while another chain
+ * started under the same key is still pending, scheduled but not running its first element yet.
+ * A chain that started running doesn't hold its key anymore.
+ */
+public enum DedupePolicy {
+
+    /**
+     * The pending chain is cancelled and the new one takes its place, with its own schedule.
+     */
+    DEBOUNCE(),
+    /**
+     * The new chain is dropped, and the pending one runs as scheduled.
+     */
+    THROTTLE(),
+    /**
+     * The new chain is dropped, and the values of its {@link Context} are copied to the pending one's, replacing older values
+     * under the same keys.
+     */
+    MERGE();
+
+}
@@ -0,0 +1,61 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.TaskElement;
+
+/**
+ * Tells the {@link TaskWatchdog} which element a {@link TaskShard} is executing and since when.
+ * <br><br>
+ * Written by the thread ticking the shard around every element, read by the watchdog thread.
+ * {@code sequence} is bumped on every enter and exit, so the watchdog can tell whether the element it sampled is still the one running.
+ */
+class ElementProbe {
+
+    private volatile TaskChain chain;
+    private volatile TaskElement element;
+    private volatile int index;
+    private volatile Thread thread;
+    private volatile long startedAt;
+    private volatile long sequence;
+
+    void enter(TaskChain chain, int index, TaskElement element) {
+        this.chain = chain;
+        this.index = index;
+        this.element = element;
+        this.thread = Thread.currentThread();
+        this.startedAt = System.nanoTime();
+        this.sequence++;
+    }
+
+    void exit() {
+        this.sequence++;
+        this.chain = null;
+        this.element = null;
+    }
+
+    /**
+     * @return Odd while an element is running
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    TaskChain getChain() {
+        return chain;
+    }
+
+    TaskElement getElement() {
+        return element;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    long getStartedAt() {
+        return startedAt;
+    }
+}
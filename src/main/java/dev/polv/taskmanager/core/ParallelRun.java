@@ -0,0 +1,126 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.ParallelElement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One run of a {@link ParallelElement}: its branches, their results and the join.
+ * <br><br>
+ * Each branch writes its result to its own slot, so branches never contend on the {@link Context}.
+ * The chain is resumed exactly once, by the branch completing the join, and the tick thread then copies the results
+ * to the context with {@link #publish(Context)}.
+ */
+class ParallelRun {
+
+    private final TaskChain chain;
+    private final ParallelElement element;
+    private final Object[] results;
+    private final Branch[] branches;
+    private final AtomicInteger remaining;
+    private final AtomicInteger winner;
+    private final int token;
+
+    /**
+     * @param token Token the chain parked on the branches with
+     */
+    ParallelRun(TaskChain chain, ParallelElement element, int token) {
+        this.chain = chain;
+        this.token = token;
+        this.element = element;
+        this.results = new Object[element.size()];
+        this.branches = new Branch[element.size()];
+        for (int i = 0; i < branches.length; i++) {
+            this.branches[i] = new Branch(i);
+            this.branches[i].acquire();
+        }
+        this.remaining = new AtomicInteger(element.size());
+        this.winner = new AtomicInteger(-1);
+    }
+
+    AsyncRunner[] getRunners() {
+        return branches;
+    }
+
+    /**
+     * Saves the results under the element's key: a list with the result of every branch for {@link ParallelElement.Join#ALL},
+     * the result of the first branch to return for {@link ParallelElement.Join#ANY}. Only called from the tick thread, once resumed.
+     */
+    void publish(Context context) {
+        String key = element.getKey();
+        if (key == null) return;
+
+        Object value;
+        if (element.getJoin() == ParallelElement.Join.ALL) {
+            value = Collections.unmodifiableList(Arrays.asList(results));
+        } else {
+            int i = winner.get();
+            value = i >= 0 ? results[i] : null;
+        }
+        if (value != null) {
+            context.putReturnData(key, value);
+        }
+    }
+
+    /**
+     * Runs every branch on the calling thread instead, for a parallel element turned down by an async limit,
+     * and saves the results. With {@link ParallelElement.Join#ANY}, stops at the first branch that returns.
+     */
+    void runOnTickThread(Context context) {
+        for (int i = 0; i < results.length; i++) {
+            try {
+                results[i] = element.getBranch(i).apply(context);
+            } catch (RuntimeException e) {
+                // A failed branch leaves its slot empty, like when it runs on the executor
+                continue;
+            }
+            if (element.getJoin() == ParallelElement.Join.ANY && winner.compareAndSet(-1, i)) break;
+        }
+        publish(context);
+    }
+
+    private void branchDone(int i, boolean failed) {
+        boolean last = remaining.decrementAndGet() == 0;
+        if (element.getJoin() == ParallelElement.Join.ALL) {
+            if (last) {
+                chain.runnerFinished(token, null);
+            }
+            return;
+        }
+
+        if (!failed && winner.compareAndSet(-1, i)) {
+            for (int j = 0; j < branches.length; j++) {
+                if (j != i) {
+                    chain.cancelAsync(branches[j]);
+                }
+            }
+            chain.runnerFinished(token, null);
+        } else if (last && winner.compareAndSet(-1, i)) {
+            // Every branch threw
+            chain.runnerFinished(token, null);
+        }
+    }
+
+    private class Branch extends AsyncRunner {
+
+        private final int i;
+
+        Branch(int i) {
+            super(ParallelRun.this.chain, element, false);
+            this.i = i;
+        }
+
+        @Override
+        protected void work(Context context) {
+            results[i] = element.getBranch(i).apply(context);
+        }
+
+        @Override
+        protected void done(TaskManager manager, @Nullable Throwable error) {
+            branchDone(i, error != null);
+        }
+    }
+}
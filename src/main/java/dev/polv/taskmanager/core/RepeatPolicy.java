@@ -0,0 +1,185 @@
+package dev.polv.taskmanager.core;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a repeating {@link TaskChain} schedules its iterations.
+ * <br><br>
+ * With a fixed rate, iterations start on a fixed grid computed from the first start, so the time the elements take and
+ * late ticks don't make the chain drift. With a fixed delay, each iteration starts a given time after the previous one ended.
+ * <br><br>
+ * Policies are immutable, every method returns a new one.
+ */
+public final class RepeatPolicy {
+
+    /**
+     * What a fixed rate chain does when it finishes an iteration after the start of the next one.
+     */
+    public enum Missed {
+        /**
+         * Drops the missed starts and waits for the next one on the grid.
+         */
+        SKIP,
+        /**
+         * Runs once right away for all the missed starts, then goes back to the grid.
+         */
+        COALESCE,
+        /**
+         * Runs once for each missed start, back to back, up to a limit counted from when the chain fell behind.
+         * Starts past the limit are dropped.
+         */
+        CATCH_UP
+    }
+
+    private final boolean fixedRate;
+    private final long periodNanos;
+    private final Missed missed;
+    private final int maxCatchUp;
+    private final long jitterNanos;
+
+    private RepeatPolicy(boolean fixedRate, long periodNanos, Missed missed, int maxCatchUp, long jitterNanos) {
+        this.fixedRate = fixedRate;
+        this.periodNanos = periodNanos;
+        this.missed = missed;
+        this.maxCatchUp = maxCatchUp;
+        this.jitterNanos = jitterNanos;
+    }
+
+    /**
+     * @param period Time between the starts of two iterations
+     * @return new {@link RepeatPolicy}, skipping missed starts
+     */
+    public static RepeatPolicy fixedRate(Duration period) {
+        return new RepeatPolicy(true, positive(period), Missed.SKIP, 0, 0);
+    }
+
+    /**
+     * @param delay Time between the end of an iteration and the start of the next one
+     * @return new {@link RepeatPolicy}
+     */
+    public static RepeatPolicy fixedDelay(Duration delay) {
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("Delay can't be negative");
+        }
+        return new RepeatPolicy(false, delay.toNanos(), Missed.SKIP, 0, 0);
+    }
+
+    private static long positive(Duration period) {
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return period.toNanos();
+    }
+
+    /**
+     * Skips the missed starts of a fixed rate chain. This is the default.
+     *
+     * @return new {@link RepeatPolicy}
+     */
+    public RepeatPolicy skipMissed() {
+        return new RepeatPolicy(fixedRate, periodNanos, Missed.SKIP, 0, jitterNanos);
+    }
+
+    /**
+     * Runs a fixed rate chain once for all its missed starts.
+     *
+     * @return new {@link RepeatPolicy}
+     */
+    public RepeatPolicy coalesceMissed() {
+        return new RepeatPolicy(fixedRate, periodNanos, Missed.COALESCE, 0, jitterNanos);
+    }
+
+    /**
+     * Runs a fixed rate chain once for each of its missed starts, back to back.
+     *
+     * @param maxRuns Maximum amount of missed starts run late, back to back. The others are dropped.
+     * @return new {@link RepeatPolicy}
+     */
+    public RepeatPolicy catchUp(int maxRuns) {
+        if (maxRuns < 1) {
+            throw new IllegalArgumentException("Catch up limit must be at least 1");
+        }
+        return new RepeatPolicy(fixedRate, periodNanos, Missed.CATCH_UP, maxRuns, jitterNanos);
+    }
+
+    /**
+     * Delays the first start by a random time up to the given one, so chains repeated at the same time
+     * don't all run on the same tick. With a fixed rate, the grid moves with it.
+     *
+     * @param maxJitter Maximum extra delay of the first start
+     * @return new {@link RepeatPolicy}
+     */
+    public RepeatPolicy jitter(Duration maxJitter) {
+        if (maxJitter.isNegative()) {
+            throw new IllegalArgumentException("Jitter can't be negative");
+        }
+        return new RepeatPolicy(fixedRate, periodNanos, missed, maxCatchUp, maxJitter.toNanos());
+    }
+
+    public boolean isFixedRate() {
+        return fixedRate;
+    }
+
+    public Duration getPeriod() {
+        return Duration.ofNanos(periodNanos);
+    }
+
+    public Missed getMissed() {
+        return missed;
+    }
+
+    /**
+     * @return Maximum amount of missed starts run with {@link Missed#CATCH_UP}, {@code 0} otherwise
+     */
+    public int getMaxCatchUp() {
+        return maxCatchUp;
+    }
+
+    public Duration getJitter() {
+        return Duration.ofNanos(jitterNanos);
+    }
+
+    /**
+     * @return Random extra delay for the first start
+     */
+    long nextJitter() {
+        return jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0;
+    }
+
+    /**
+     * Works out when the next iteration starts, and moves the grid slot of a fixed rate chain.
+     *
+     * @param slot Grid slot the finished iteration started on. Only used with a fixed rate.
+     * @param now Time the iteration finished
+     * @param caughtUp Amount of missed starts already run late, back to back, since the chain fell behind
+     * @return Slot of the next iteration. With a fixed delay, its start.
+     */
+    long nextSlot(long slot, long now, int caughtUp) {
+        if (!fixedRate) {
+            return now + periodNanos;
+        }
+
+        long next = slot + periodNanos;
+        if (next - now > 0) return next;
+
+        // Amount of starts on the grid up to now, the first one included
+        long behind = (now - next) / periodNanos + 1;
+        return switch (missed) {
+            case SKIP -> next + behind * periodNanos;
+            case COALESCE -> next + (behind - 1) * periodNanos;
+            case CATCH_UP -> {
+                // Late runs already made count against the limit, once it is used up the rest is skipped
+                long left = maxCatchUp - caughtUp;
+                yield left > 0 ? next + Math.max(0, behind - left) * periodNanos : next + behind * periodNanos;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "RepeatPolicy[" + (fixedRate ? "fixedRate " : "fixedDelay ") + getPeriod()
+                + (fixedRate ? ", " + missed + (missed == Missed.CATCH_UP ? " " + maxCatchUp : "") : "")
+                + (jitterNanos > 0 ? ", jitter " + getJitter() : "") + "]";
+    }
+}
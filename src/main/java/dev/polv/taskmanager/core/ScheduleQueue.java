@@ -0,0 +1,194 @@
+package dev.polv.taskmanager.core;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of {@link TaskChain}s keyed on the time of their next action.
+ * <br><br>
+ * Keys are kept in a primitive array next to the chains, so ordering never boxes and
+ * the chain's own {@code nextAction} can change while it sits in the queue. Entries with the same
+ * key come out in insertion order. Keys are {@link System#nanoTime()}-like values, so they are only compared
+ * by their difference, which stays correct when the clock wraps around.
+ * <br><br>
+ * Entries are never removed eagerly. Each one remembers the queue token the chain had when it was
+ * inserted, and an entry whose token no longer matches is a tombstone that is skipped when polled
+ * or dropped by {@link #purge(TaskShard)}.
+ */
+class ScheduleQueue {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private TaskChain[] chains;
+    private long[] keys;
+    private int[] tokens;
+    private long[] orders;
+    private long nextOrder;
+    private int size;
+    // Indices still to visit by countDue, kept to not allocate per tick
+    private int[] pending;
+
+    ScheduleQueue() {
+        this.chains = new TaskChain[INITIAL_CAPACITY];
+        this.keys = new long[INITIAL_CAPACITY];
+        this.tokens = new int[INITIAL_CAPACITY];
+        this.orders = new long[INITIAL_CAPACITY];
+        this.nextOrder = 0;
+        this.size = 0;
+        this.pending = new int[INITIAL_CAPACITY];
+    }
+
+    void add(TaskChain chain, long key, int token) {
+        if (size == chains.length) {
+            int capacity = chains.length << 1;
+            chains = Arrays.copyOf(chains, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            orders = Arrays.copyOf(orders, capacity);
+        }
+        siftUp(size++, chain, key, token, nextOrder++);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The key of the earliest chain. Only valid if the queue is not empty.
+     */
+    long peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @return The token the earliest chain was inserted with. Only valid if the queue is not empty.
+     */
+    int peekToken() {
+        return tokens[0];
+    }
+
+    TaskChain poll() {
+        if (size == 0) return null;
+
+        TaskChain head = chains[0];
+        int last = --size;
+        TaskChain chain = chains[last];
+        long key = keys[last];
+        int token = tokens[last];
+        long order = orders[last];
+        chains[last] = null;
+        if (last > 0) {
+            siftDown(0, chain, key, token, order);
+        }
+        return head;
+    }
+
+    /**
+     * Counts the live entries due at the given time without removing them.
+     * Only walks the part of the heap with keys up to {@code now}.
+     *
+     * @param now The current time
+     * @param owner The {@link TaskShard} owning this queue
+     * @return Amount of live entries with a key up to {@code now}
+     */
+    int countDue(long now, TaskShard owner) {
+        if (size == 0 || keys[0] - now > 0) return 0;
+        if (pending.length < size) {
+            pending = new int[chains.length];
+        }
+
+        int count = 0;
+        int top = 0;
+        pending[top++] = 0;
+        while (top > 0) {
+            int i = pending[--top];
+            TaskChain chain = chains[i];
+            if (owner.owns(chain) && chain.isQueuedWith(tokens[i])) {
+                count++;
+            }
+            // Children are only pushed when due, so the stack never holds more than the due entries
+            int child = (i << 1) + 1;
+            for (int end = Math.min(child + 2, size); child < end; child++) {
+                if (keys[child] - now <= 0) {
+                    pending[top++] = child;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops every tombstone and every chain that no longer belongs to the owner, then rebuilds the heap.
+     *
+     * @param owner The {@link TaskShard} owning this queue
+     * @return Amount of entries removed
+     */
+    int purge(TaskShard owner) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            TaskChain chain = chains[i];
+            if (owner.owns(chain) && chain.isQueuedWith(tokens[i])) {
+                chains[kept] = chain;
+                keys[kept] = keys[i];
+                tokens[kept] = tokens[i];
+                orders[kept] = orders[i];
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        Arrays.fill(chains, kept, size, null);
+        size = kept;
+
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i, chains[i], keys[i], tokens[i], orders[i]);
+        }
+        return removed;
+    }
+
+    private boolean before(int i, long key, long order) {
+        long diff = keys[i] - key;
+        return diff < 0 || (diff == 0 && orders[i] < order);
+    }
+
+    private void siftUp(int i, TaskChain chain, long key, int token, long order) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (before(parent, key, order)) break;
+            move(parent, i);
+            i = parent;
+        }
+        set(i, chain, key, token, order);
+    }
+
+    private void siftDown(int i, TaskChain chain, long key, int token, long order) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < size && before(right, keys[child], orders[child])) {
+                child = right;
+            }
+            if (!before(child, key, order)) break;
+            move(child, i);
+            i = child;
+        }
+        set(i, chain, key, token, order);
+    }
+
+    private void move(int from, int to) {
+        chains[to] = chains[from];
+        keys[to] = keys[from];
+        tokens[to] = tokens[from];
+        orders[to] = orders[from];
+    }
+
+    private void set(int i, TaskChain chain, long key, int token, long order) {
+        chains[i] = chain;
+        keys[i] = key;
+        tokens[i] = token;
+        orders[i] = order;
+    }
+}
@@ -0,0 +1,91 @@
+package dev.polv.taskmanager.core;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chains parked on one named signal or latch of a {@link TaskManager}.
+ * <br><br>
+ * Waiters are kept in a concurrent set, so a chain that times out or is cancelled leaves in constant time and rare signals
+ * don't pile up dead waiters. Each chain decides with a compare-and-set whether a signal or its timeout wakes it up.
+ * <br><br>
+ * The manager only keeps a slot while it has waiters or is an open latch. Waiters are added and open latches set while
+ * the manager holds the slot's map entry, so it is never dropped between the check and the change.
+ */
+final class SignalSlot {
+
+    private final String name;
+    private final Set<TaskChain> waiters;
+    private volatile boolean open;
+    private volatile Object payload;
+
+    SignalSlot(String name) {
+        this.name = name;
+        this.waiters = ConcurrentHashMap.newKeySet();
+        this.open = false;
+        this.payload = null;
+    }
+
+    void add(TaskChain chain) {
+        waiters.add(chain);
+    }
+
+    void remove(TaskChain chain) {
+        waiters.remove(chain);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return {@code true} if the manager can forget it: nobody waits on it, and it isn't an open latch
+     */
+    boolean isUnused() {
+        return !open && waiters.isEmpty();
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return Payload the latch was opened with
+     */
+    Object getPayload() {
+        return payload;
+    }
+
+    /**
+     * Wakes up every chain parked on it.
+     *
+     * @return Amount of chains woken up
+     */
+    int fire(Object payload) {
+        int woken = 0;
+        Iterator<TaskChain> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            TaskChain chain = iterator.next();
+            iterator.remove();
+            if (chain.wakeSignal(payload)) {
+                woken++;
+            }
+        }
+        return woken;
+    }
+
+    /**
+     * Opens the latch. The waiters are woken up afterwards with {@link #fire(Object)}, so a chain parking meanwhile
+     * either sees it open or is woken up.
+     */
+    void open(Object payload) {
+        this.payload = payload;
+        this.open = true;
+    }
+
+    void close() {
+        this.open = false;
+        this.payload = null;
+    }
+}
@@ -0,0 +1,86 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.TaskElement.ElementType;
+
+/**
+ * An element that ran for longer than the watchdog threshold, see {@link TaskManager.Builder#watchdog(java.time.Duration, java.util.function.Consumer)}.
+ */
+public class SlowElementReport {
+
+    private final long chainId;
+    private final int elementIndex;
+    private final ElementType elementType;
+    private final long elapsedNanos;
+    private final String threadName;
+    private final StackTraceElement[] stackTrace;
+    private final boolean promoted;
+
+    protected SlowElementReport(long chainId, int elementIndex, ElementType elementType, long elapsedNanos,
+                                String threadName, StackTraceElement[] stackTrace, boolean promoted) {
+        this.chainId = chainId;
+        this.elementIndex = elementIndex;
+        this.elementType = elementType;
+        this.elapsedNanos = elapsedNanos;
+        this.threadName = threadName;
+        this.stackTrace = stackTrace;
+        this.promoted = promoted;
+    }
+
+    /**
+     * @return {@link TaskChain#getId()} of the chain running the element
+     */
+    public long getChainId() {
+        return chainId;
+    }
+
+    /**
+     * @return Index of the element in its chain
+     */
+    public int getElementIndex() {
+        return elementIndex;
+    }
+
+    public ElementType getElementType() {
+        return elementType;
+    }
+
+    /**
+     * @return Time the element had been running when it was sampled, in nanoseconds. It may still be running.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return Stack of the thread running the element, sampled while it was over the threshold
+     */
+    public StackTraceElement[] getStackTrace() {
+        return stackTrace.clone();
+    }
+
+    /**
+     * @return {@code true} if later runs of the element were moved to async
+     */
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append("Element ").append(elementIndex).append(" (").append(elementType).append(") of chain ").append(chainId)
+                .append(" has been running for ").append(elapsedNanos / 1_000_000).append("ms on ").append(threadName);
+        if (promoted) {
+            builder.append(", moved to async");
+        }
+        for (StackTraceElement element : stackTrace) {
+            builder.append("\n\tat ").append(element);
+        }
+        return builder.toString();
+    }
+
+}
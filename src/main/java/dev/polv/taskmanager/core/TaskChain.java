@@ -2,32 +2,125 @@ package dev.polv.taskmanager.core;
 
 import dev.polv.taskmanager.core.elements.WaitElement;
 import dev.polv.taskmanager.core.elements.FunctionElement;
+import dev.polv.taskmanager.core.elements.ParallelElement;
+import dev.polv.taskmanager.core.elements.SignalElement;
+import dev.polv.taskmanager.core.elements.StageElement;
 import dev.polv.taskmanager.core.elements.TaskElement;
+import dev.polv.taskmanager.core.elements.TaskElement.ElementType;
 import dev.polv.taskmanager.core.elements.TimedFunctionElement;
+import dev.polv.taskmanager.utils.math.Easing;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
 
 public class TaskChain {
 
-    private TaskStatus status;
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    private static final VarHandle KEY_STATE;
+    private static final VarHandle SIGNAL_STATE;
 
-    private Long nextAction = null;
+    private static final int KEY_NONE = 0;
+    private static final int KEY_PENDING = 1;
+    private static final int KEY_RUNNING = 2;
+    private static final int KEY_REPLACED = 3;
+
+    private static final int SIGNAL_NONE = 0;
+    private static final int SIGNAL_WAITING = 1;
+    private static final int SIGNAL_FIRED = 2;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            KEY_STATE = lookup.findVarHandle(TaskChain.class, "keyState", int.class);
+            SIGNAL_STATE = lookup.findVarHandle(TaskChain.class, "signalState", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long id = NEXT_ID.incrementAndGet();
+    private volatile TaskStatus status;
+    private TaskPriority priority = TaskPriority.NORMAL;
+    private int maxStepsPerTick = 0;
+    private Object affinity = null;
+    private boolean mainThreadOnly = false;
+    private String group = null;
+    private AsyncGate groupGate = null;
+
+    private long nextAction = 0;
+    private boolean hasNextAction = false;
     private int index = 0;
     private boolean blocked = false;
 
-    private TaskManager manager = null;
+    private volatile TaskManager manager = null;
+    private volatile TaskShard shard = null;
+    private volatile boolean queued = false;
+    private int queueToken = 0;
 
     private final List<TaskElement> elements;
+    private final ChainTemplate template;
+    private final boolean pooled;
+    private boolean recyclePending = false;
 
     private Context context;
     private final Lock tickLock = new ReentrantLock();
     private boolean awaiting = false;
+    private AsyncRunner[] asyncRunners = null;
+    private ParallelRun parallelRun = null;
+    private boolean throttleRetry = false;
+    private volatile int signalState = SIGNAL_NONE;
+    private volatile SignalSlot signalSlot = null;
+    private volatile Object signalPayload = null;
+    private volatile int stageSeq = 0;
+    private volatile CompletionStage<?> pendingStage = null;
+    private volatile boolean stageReady = false;
+    private volatile Object stageResult = null;
+    private volatile Throwable stageError = null;
+    // Runners the chain is parked on carry the token it parked with, so a late runner of an earlier run can't resume it
+    private int awaitToken = 0;
+    private int lastAwaitToken = 0;
+    private int finishedToken = 0;
+    private Throwable asyncError = null;
+    private int asyncErrorToken = 0;
+    private long throttleWait = 0;
+    private volatile boolean[] promoted = null;
+    private volatile boolean cancelled = false;
+    private final Object inFlightLock = new Object();
+    private AsyncRunner[] inFlight = null;
+    private int inFlightCount = 0;
+    private CompletableFuture<Void> inFlightDone = null;
+    private boolean throttleParked = false;
+    private CompletableFuture<Context> completion = null;
+    private volatile Throwable failure = null;
+    private String persistentName = null;
+    private String dedupeKey = null;
+    private DedupePolicy dedupePolicy = null;
+    private volatile int keyState = KEY_NONE;
+    private RepeatPolicy repeatPolicy = null;
+    private long repeatSlot = 0;
+    private int repeatCaughtUp = 0;
+    private volatile boolean journalDirty = false;
 
     private TaskChain() {
         this(new ArrayList<>());
@@ -37,9 +130,38 @@ public class TaskChain {
         this.status = TaskStatus.NONE;
 
         this.elements = elements;
+        this.template = null;
+        this.pooled = false;
+        this.resetContext();
+    }
+
+    private TaskChain(ChainTemplate template, boolean pooled) {
+        this.status = TaskStatus.NONE;
+
+        this.elements = template.getElements();
+        this.template = template;
+        this.pooled = pooled;
+        this.priority = template.getPriority();
+        this.maxStepsPerTick = template.getMaxStepsPerTick();
+        this.affinity = template.getAffinity();
+        this.mainThreadOnly = template.isMainThreadOnly();
+        this.group = template.getGroup();
+        this.blocked = true;
         this.resetContext();
     }
 
+    /**
+     * @param template The {@link ChainTemplate} to share the elements of
+     * @param manager The {@link TaskManager} to register the chain to
+     * @param pooled Whether the chain goes back to the template's pool once it finishes
+     * @return new {@link TaskChain}
+     */
+    protected static TaskChain fromTemplate(ChainTemplate template, TaskManager manager, boolean pooled) {
+        TaskChain chain = new TaskChain(template, pooled);
+        chain.setManager(manager);
+        return chain;
+    }
+
     public static TaskChain create(TaskManager manager) {
         TaskChain chain = new TaskChain();
         chain.setManager(manager);
@@ -60,245 +182,1739 @@ public class TaskChain {
         return elements;
     }
 
+    protected List<TaskElement> getElementsForTemplate() {
+        return elements;
+    }
+
     protected void _start() throws IllegalStateException {
         if (manager == null) {
             throw new IllegalStateException("TaskChain is not registered to a TaskManager");
         }
+        long now = manager.getClock().nanoTime();
         index = 0;
-        nextAction = System.currentTimeMillis();
+        cancelled = false;
+        awaiting = false;
+        throttleRetry = false;
+        stageReady = false;
+        failure = null;
+        awaitToken = 0;
+        groupGate = manager.getAsyncGate(group);
+        setNextAction(now);
+        restoreFromJournal(now);
+        repeatSlot = nextAction;
+        repeatCaughtUp = 0;
+        if (!enterKey()) return;
         status = TaskStatus.RUNNING;
-        // tick();
+        manager.getMetrics().onChainStarted();
+        manager.schedule(this);
+        journalChanged();
     }
 
     protected void _schedule(Duration time) throws IllegalStateException {
         if (manager == null) {
             throw new IllegalStateException("TaskChain is not registered to a TaskManager");
         }
+        long now = manager.getClock().nanoTime();
         index = 0;
-        nextAction = System.currentTimeMillis() + time.toMillis();
+        cancelled = false;
+        awaiting = false;
+        throttleRetry = false;
+        stageReady = false;
+        failure = null;
+        awaitToken = 0;
+        groupGate = manager.getAsyncGate(group);
+        setNextAction(now + time.toNanos());
+        restoreFromJournal(now);
+        repeatSlot = nextAction;
+        repeatCaughtUp = 0;
+        if (!enterKey()) return;
         status = TaskStatus.RUNNING;
-        // tick();
+        manager.getMetrics().onChainStarted();
+        manager.schedule(this);
+        journalChanged();
     }
 
-    protected void _cancel() {
-        this.getCurrentElement().cancel();
-        nextAction = null;
+    /**
+     * Takes the chain's dedupe key, if it has one. A chain that is dropped is left finished, without ever running.
+     *
+     * @return {@code false} if the chain must not run
+     */
+    private boolean enterKey() {
+        if (dedupeKey == null) return true;
+
+        keyState = KEY_PENDING;
+        if (manager.enterKey(this)) return true;
+
+        keyState = KEY_NONE;
+        clearNextAction();
+        cancelled = true;
         status = TaskStatus.FINISHED;
+        completeFuture(takeCompletion());
+        return false;
+    }
+
+    /**
+     * Lets go of the dedupe key before the first element runs. Only called from the tick thread.
+     *
+     * @return {@code false} if a newer chain replaced this one, which is being cancelled
+     */
+    private boolean claimKey() {
+        if (!KEY_STATE.compareAndSet(this, KEY_PENDING, KEY_RUNNING)) return false;
+        manager.leaveKey(this);
+        return true;
     }
 
-    protected void tick() {
-        if (!tickLock.tryLock()) return;
-        if (status != TaskStatus.RUNNING || nextAction == null || this.manager == null) return;
-        if (System.currentTimeMillis() < nextAction) return;
+    /**
+     * Called by the manager when a newer chain debounces this one.
+     *
+     * @return {@code true} if the chain was still pending, and is now the caller's to cancel
+     */
+    protected boolean replaceKeyed() {
+        return KEY_STATE.compareAndSet(this, KEY_PENDING, KEY_REPLACED);
+    }
 
-        TaskElement element = getCurrentElement();
-        if (this.execute(element)) {
-            int predictNextElementIndex = index+1;
+    /**
+     * @return {@code true} if the chain holds its dedupe key and hasn't run its first element yet
+     */
+    protected boolean isKeyPending() {
+        return keyState == KEY_PENDING;
+    }
 
-            if (predictNextElementIndex >= elements.size()) {
-                _cancel();
-            } else {
-                index = predictNextElementIndex;
-            }
+    private void restoreFromJournal(long now) {
+        if (persistentName == null) return;
+
+        ChainJournal journal = manager.getJournal();
+        if (journal == null) {
+            throw new IllegalStateException("TaskChain is persistent but its TaskManager has no journal");
         }
+        journal.restore(this, now);
+    }
+
+    /**
+     * Moves a chain being started to a state saved in the journal.
+     *
+     * @return {@code false} if the state doesn't fit the chain anymore, and it starts over
+     */
+    protected boolean restore(int index, long nextAction, Map<String, Object> returnData, Map<String, Object> typedData) {
+        if (index < 0 || index >= elements.size()) return false;
 
-        tickLock.unlock();
+        this.index = index;
+        setNextAction(nextAction);
+        this.context.restore(returnData, typedData);
+        return true;
     }
 
-    private boolean execute(TaskElement element) {
-        boolean next = true;
+    protected void _cancel() {
+        this._cancel(true);
+    }
 
-        switch (element.getType()) {
-            case WAIT -> {
-                WaitElement waitElement = (WaitElement) element;
-                nextAction = System.currentTimeMillis() + waitElement.getTime();
+    /**
+     * Stops the chain and cancels its async work still in flight. Work that hasn't started is dropped.
+     *
+     * @param interrupt Whether to interrupt the threads running async work of the chain
+     */
+    protected void _cancel(boolean interrupt) {
+        this.cancelled = true;
+        this.getCurrentElement().cancel();
+        this.stop(false);
+        this.cancelInFlight(interrupt);
+
+        CompletionStage<?> stage = pendingStage;
+        pendingStage = null;
+        if (stage instanceof CompletableFuture<?> future) {
+            // Already ignored by the chain, this tells whoever produces it to stop
+            future.cancel(interrupt);
+        }
+    }
+
+    /**
+     * Ends a chain that ran past its last element.
+     */
+    private void _finish() {
+        this.stop(true);
+    }
+
+    private void stop(boolean finished) {
+        boolean wasRunning = status == TaskStatus.RUNNING;
+        clearNextAction();
+        status = TaskStatus.FINISHED;
+
+        journalChanged();
+        TaskManager manager = this.manager;
+        if (manager != null) {
+            if (wasRunning) {
+                if (finished) {
+                    manager.getMetrics().onChainFinished();
+                } else {
+                    manager.getMetrics().onChainCancelled();
+                }
             }
-            case RUN -> {
-                FunctionElement functionElement = (FunctionElement) element;
-                functionElement.accept(context);
-                nextAction = System.currentTimeMillis();
+            manager.discard(this);
+            if (dedupeKey != null) {
+                keyState = KEY_NONE;
+                manager.leaveKey(this);
             }
-            case RUN_ASYNC -> {
-                FunctionElement functionElement = (FunctionElement) element;
-                manager.getExecutor().submit(() -> functionElement.accept(context));
-                nextAction = System.currentTimeMillis();
+            if (signalState != SIGNAL_NONE) {
+                leaveSignal();
             }
-            case RUN_ASYNC_AWAIT -> {
-                FunctionElement functionElement = (FunctionElement) element;
-                next = false;
 
-                if (!functionElement.isRunning() && !this.awaiting) {
-                    awaiting = true;
-                    manager.getExecutor().submit(() -> functionElement.accept(context));
-                } else if (!functionElement.isRunning() && this.awaiting) {
-                    awaiting = false;
-                    next = true;
-                }
+            CompletableFuture<Context> completion;
+            synchronized (inFlightLock) {
+                // Skipped by the async limit it may be parked on
+                throttleParked = false;
+                recyclePending = pooled;
+                // Turns a stage still running into a stale one
+                stageSeq++;
+                completion = this.completion;
+                this.completion = null;
             }
-            case RUN_TIMED -> {
-                next = false;
-                TimedFunctionElement timedFunctionElement = (TimedFunctionElement) element;
-                if (!timedFunctionElement.isRunning()) {
-                    timedFunctionElement.start();
-                }
-
-                double v = timedFunctionElement.getValue();
-                if (v >= 1) next = true;
-
-                timedFunctionElement.getFunction().accept(context, v);
+            completeFuture(completion);
+            if (pooled) {
+                // Recycled by the thread ticking the chain, once it is certainly done with it
+                manager.complete(this);
             }
         }
+    }
 
-        return next;
+    /**
+     * Resets a finished pooled chain and gives it back to its template, once none of its async work is running.
+     * Only called from the thread ticking the chain's shard.
+     */
+    protected void recycleIfDone() {
+        if (!pooled) return;
+        synchronized (inFlightLock) {
+            if (!recyclePending || inFlightCount > 0) return;
+            recyclePending = false;
+        }
+
+        // Turns every entry left in the queues and the tween engine into a tombstone
+        nextQueueToken();
+        status = TaskStatus.NONE;
+        index = 0;
+        clearNextAction();
+        awaiting = false;
+        parallelRun = null;
+        throttleRetry = false;
+        stageReady = false;
+        failure = null;
+        awaitToken = 0;
+        cancelled = false;
+        journalDirty = false;
+        context.clear();
+        template.release(this);
     }
 
-    protected TaskChain setManager(@Nullable TaskManager manager) {
-        if (this.manager != null) {
-            this.manager.unregister(this);
+    /**
+     * Executes the current element and, while the chain stays due, the ones after it.
+     * Stops at an element that isn't done yet (an await or a timed element), at a wait, or after the step limit.
+     *
+     * @param now Time of the current tick, in nanoseconds of the manager's clock
+     * @param maxSteps Maximum amount of elements to execute
+     * @return Amount of elements executed
+     */
+    protected int tick(long now, int maxSteps) {
+        if (!tickLock.tryLock()) return 0;
+        try {
+            int steps = 0;
+
+            while (steps < maxSteps) {
+                if (status != TaskStatus.RUNNING || !hasNextAction || this.manager == null) break;
+                if (now - nextAction < 0) break;
+
+                if (dedupeKey != null && keyState != KEY_NONE && keyState != KEY_RUNNING && !claimKey()) {
+                    // Debounced by a newer chain with the same key
+                    this.stop(false);
+                    break;
+                }
+                if (steps == 0 && manager.isMetricsEnabled()) {
+                    manager.getMetrics().onLateness(now - nextAction);
+                }
+                TaskElement element = getCurrentElement();
+                steps++;
+                ElementProbe probe = shard != null ? shard.getProbe() : null;
+                boolean next;
+                if (probe == null) {
+                    next = this.execute(element, now);
+                } else {
+                    probe.enter(this, index, element);
+                    try {
+                        next = this.execute(element, now);
+                    } finally {
+                        probe.exit();
+                    }
+                }
+                if (!next) break;
+                this.advance(now);
+            }
+            return steps;
+        } finally {
+            tickLock.unlock();
         }
-        this.manager = manager;
-        return this;
     }
 
-    private void resetContext() {
-        this.context = new Context(this);
+    /**
+     * Continues a chain parked on async work or a timed element. Called from the tick thread once it has completed.
+     * A chain parked on an async limit runs the same element again instead.
+     *
+     * @param now Time of the current tick, in nanoseconds of the manager's clock
+     */
+    protected void _resume(long now) {
+        if (!awaiting) return;
+        ElementProbe probe = shard != null ? shard.getProbe() : null;
+        if (probe == null) {
+            resume(now);
+            return;
+        }
+        probe.enter(this, index, getCurrentElement());
+        try {
+            resume(now);
+        } finally {
+            probe.exit();
+        }
     }
 
-    public boolean isFinished() {
-        return status == TaskStatus.FINISHED;
+    private void resume(long now) {
+        int awaitToken = this.awaitToken;
+        Throwable asyncError = null;
+        if (awaitToken != 0) {
+            synchronized (inFlightLock) {
+                // Only completions of an earlier run so far, the runners of this one are still going
+                if (finishedToken - awaitToken < 0) return;
+                if (asyncErrorToken == awaitToken) {
+                    asyncError = this.asyncError;
+                }
+                this.asyncError = null;
+            }
+            this.awaitToken = 0;
+        }
+        awaiting = false;
+        if (throttleRetry) {
+            throttleRetry = false;
+            if (status == TaskStatus.RUNNING) {
+                setNextAction(now);
+            }
+            return;
+        }
+        if (asyncError != null) {
+            if (status == TaskStatus.RUNNING) {
+                fail(asyncError);
+            }
+            return;
+        }
+        if (stageReady) {
+            stageReady = false;
+            Object result = stageResult;
+            Throwable error = stageError;
+            stageResult = null;
+            stageError = null;
+            pendingStage = null;
+            if (status != TaskStatus.RUNNING) return;
+            if (error != null) {
+                fail(error);
+                return;
+            }
+            saveStageResult((StageElement) getCurrentElement(), result);
+        }
+        if (signalState == SIGNAL_FIRED) {
+            Object payload = signalPayload;
+            signalPayload = null;
+            signalSlot = null;
+            signalState = SIGNAL_NONE;
+            if (status != TaskStatus.RUNNING) return;
+            saveSignalPayload((SignalElement) getCurrentElement(), payload);
+        }
+        ParallelRun parallelRun = this.parallelRun;
+        this.parallelRun = null;
+        if (status != TaskStatus.RUNNING) return;
+
+        if (parallelRun != null) {
+            parallelRun.publish(context);
+        }
+        setNextAction(now);
+        this.advance(now);
     }
 
-    public boolean isRunning() {
-        return status == TaskStatus.RUNNING;
+    private void setNextAction(long nextAction) {
+        this.nextAction = nextAction;
+        this.hasNextAction = true;
     }
 
-    public boolean isBlocked() {
-        return blocked;
+    private void clearNextAction() {
+        this.hasNextAction = false;
     }
 
-    public Long getNextAction() {
-        return nextAction;
+    /**
+     * @return The runner to submit for the current async element, reused from a previous run when possible
+     */
+    private AsyncRunner asyncRunner(FunctionElement element, boolean await) {
+        if (asyncRunners == null || asyncRunners.length != elements.size()) {
+            asyncRunners = new AsyncRunner[elements.size()];
+        }
+
+        AsyncRunner runner = asyncRunners[index];
+        if (runner == null || !runner.isFor(element)) {
+            runner = new AsyncRunner(this, element, await);
+            asyncRunners[index] = runner;
+        }
+        if (!runner.acquire()) {
+            // Still running from a previous pass, this one gets its own
+            runner = new AsyncRunner(this, element, await);
+            runner.acquire();
+        }
+        return runner;
     }
 
-    public int getIndex() {
-        return index;
+    private boolean isPromoted(int index) {
+        boolean[] promoted = this.promoted;
+        return promoted != null && index < promoted.length && promoted[index];
     }
 
     /**
-     * Will wait for a certain amount of time before executing next chain.
+     * Makes later runs of a synchronous element run on the executor, awaited. Called by the watchdog thread.
      *
-     * @param time Time to wait
-     * @return Same {@link TaskChain}
+     * @param index Index of the element
+     * @param element The element, to check it is still at that index
+     * @return {@code true} if the element was promoted
      */
-    public TaskChain timeout(Duration time) {
-        if (this.blocked) {
-            throw new IllegalStateException("TaskChain is blocked");
-        }
+    protected synchronized boolean promoteToAsync(int index, TaskElement element) {
+        if (mainThreadOnly || element.getType() != ElementType.RUN) return false;
+        if (index >= elements.size() || elements.get(index) != element) return false;
 
-        elements.add(new WaitElement(time));
-        return this;
+        boolean[] current = this.promoted;
+        boolean[] next = current == null ? new boolean[elements.size()] : Arrays.copyOf(current, Math.max(current.length, elements.size()));
+        next[index] = true;
+        this.promoted = next;
+        return true;
     }
 
     /**
-     * Will wait for a certain amount of time before executing next chain.
-     * @param timeInMillis Time to wait in milliseconds
-     * @return Same {@link TaskChain}
+     * Takes slots and permits from the async limits of the manager and of the chain's group, one of each for every
+     * runner the element submits. If the rate turned the element down, {@code throttleWait} is set to the time until the next permit.
+     *
+     * @param runners Amount of runners the element submits
+     * @return The gate that turned the element down, or {@code null} if it can be submitted
      */
-    public TaskChain timeout(long timeInMillis) {
-        if (this.blocked) {
-            throw new IllegalStateException("TaskChain is blocked");
+    private AsyncGate admit(AsyncGate managerGate, long now, int runners) {
+        AsyncGate groupGate = this.groupGate;
+        throttleWait = 0;
+        if (managerGate == null && groupGate == null) return null;
+
+        if (managerGate != null && !managerGate.tryEnter(runners)) return managerGate;
+        if (groupGate != null && !groupGate.tryEnter(runners)) {
+            if (managerGate != null) managerGate.exit(runners);
+            return groupGate;
         }
 
-        return timeout(Duration.ofMillis(timeInMillis));
+        AsyncGate limited = null;
+        long wait = managerGate != null ? managerGate.tryTake(now, runners) : 0;
+        if (wait > 0) {
+            limited = managerGate;
+        } else if (groupGate != null && (wait = groupGate.tryTake(now, runners)) > 0) {
+            limited = groupGate;
+            if (managerGate != null) managerGate.refund(runners);
+        }
+        if (limited != null) {
+            if (managerGate != null) managerGate.exit(runners);
+            if (groupGate != null) groupGate.exit(runners);
+            throttleWait = wait;
+        }
+        return limited;
     }
 
     /**
-     * Runs a function synchronously. Will block current thread.
+     * Handles an async element turned down by a limit, as its {@link AsyncLimit.Policy} says.
      *
-     * @param function Function to run
-     * @return Same {@link TaskChain}
+     * @return {@code true} if the chain goes on with the next element
      */
-    public TaskChain run(Consumer<Context> function) {
-        if (this.blocked) {
-            throw new IllegalStateException("TaskChain is blocked");
+    private boolean throttled(AsyncGate gate, TaskElement element, long now) {
+        AsyncLimit.Policy policy = gate.getPolicy();
+        if (manager.isMetricsEnabled()) {
+            manager.getMetrics().onAsyncLimited(policy);
         }
+        switch (policy) {
+            case DROP -> {
+                setNextAction(now);
+                return true;
+            }
+            case RUN_ON_TICK_THREAD -> {
+                if (element instanceof ParallelElement parallelElement) {
+                    new ParallelRun(this, parallelElement, 0).runOnTickThread(context);
+                } else {
+                    ((FunctionElement) element).accept(context);
+                }
+                setNextAction(now);
+                return true;
+            }
+            default -> {
+                if (throttleWait > 0) {
+                    // Over the rate: back in the queue until the next permit
+                    setNextAction(now + throttleWait);
+                    return false;
+                }
 
-        elements.add(new FunctionElement(function, false));
-        return this;
+                // Over the concurrency: parked until the gate hands the chain back
+                awaiting = true;
+                throttleRetry = true;
+                clearNextAction();
+                synchronized (inFlightLock) {
+                    throttleParked = true;
+                }
+                gate.park(this);
+                return false;
+            }
+        }
     }
 
     /**
-     * Runs a function asynchronously (won't wait for it to finish).
-     * @param function Function to run
-     * @return Same {@link TaskChain}
+     * Hands a chain parked on an async limit back to its shard. Called by the gate when a slot is free.
+     *
+     * @return {@code false} if the chain isn't parked anymore, and the slot should go to another one
      */
-    public TaskChain runAsync(Consumer<Context> function) {
-        if (this.blocked) {
-            throw new IllegalStateException("TaskChain is blocked");
+    protected boolean wakeThrottled() {
+        synchronized (inFlightLock) {
+            if (!throttleParked) return false;
+            throttleParked = false;
         }
-
-        elements.add(new FunctionElement(function, true));
-        return this;
+        TaskManager manager = this.manager;
+        if (manager == null) return false;
+        manager.complete(this);
+        return true;
     }
 
     /**
-     * Runs a function asynchronously and waits for it to finish before continuing
+     * Starts the work of a stage element and parks the chain until it completes. A stage that is already done
+     * lets the chain go on right away.
      *
-     * @param function Function to run
-     * @return Same {@link TaskChain}
+     * @return {@code true} if the chain goes on with the next element
      */
-    public TaskChain runAsyncAwait(Consumer<Context> function) {
-        if (this.blocked) {
-            throw new IllegalStateException("TaskChain is blocked");
+    private boolean awaitStage(StageElement element, long now) {
+        CompletionStage<?> stage = element.apply(context);
+        if (stage == null) {
+            setNextAction(now);
+            return true;
+        }
+        if (stage instanceof CompletableFuture<?> future && future.isDone() && !future.isCompletedExceptionally()) {
+            saveStageResult(element, future.join());
+            setNextAction(now);
+            return true;
         }
 
-        elements.add(new FunctionElement(function, true, true));
-        return this;
+        // Parked: the stage hands the chain back through the completion queue
+        int seq;
+        synchronized (inFlightLock) {
+            seq = ++stageSeq;
+        }
+        awaiting = true;
+        clearNextAction();
+        pendingStage = stage;
+        stage.whenComplete((result, error) -> stageCompleted(seq, result, error));
+        return false;
+    }
+
+    private void stageCompleted(int seq, Object result, Throwable error) {
+        if (seq != stageSeq) return;
+        stageResult = result;
+        stageError = error;
+        stageReady = true;
+        TaskManager manager = this.manager;
+        if (manager != null) {
+            manager.complete(this);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void saveStageResult(StageElement element, Object result) {
+        if (result == null) return;
+        if (element.getKey() != null) {
+            context.putReturnData(element.getKey(), result);
+        }
+        if (element.getTypedKey() != null) {
+            context.put((ContextKey<Object>) element.getTypedKey(), result);
+        }
     }
 
     /**
-     * Builds and runs the {@link TaskChain}.
-     * <br><br>
-     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     * @return A new token for runners the chain parks on. Only called from the tick thread.
      */
-    public void start() {
-        this._start();
+    private int parkOnRunners() {
+        int token = ++lastAwaitToken;
+        if (token == 0) {
+            token = ++lastAwaitToken;
+        }
+        awaitToken = token;
+        return token;
     }
 
     /**
-     * Builds and schedules the {@link TaskChain}.
-     * <br><br>
-     * * <b>This will lock the Chain. No more Chains can be attached.</b>
-     * @param time Time to wait before starting the Chain
+     * Hands the chain back to its shard once the runners it parked on are done. Called by the thread running the last one.
+     * If an awaited element threw, the chain is stopped with the error once it is resumed.
+     *
+     * @param token Token the chain parked on the runner with
+     * @param error What the element threw, or {@code null}
      */
-    public void schedule(Duration time) {
-        this._schedule(time);
+    protected void runnerFinished(int token, @Nullable Throwable error) {
+        synchronized (inFlightLock) {
+            if (token - finishedToken > 0) {
+                finishedToken = token;
+            }
+            if (error != null && token - asyncErrorToken >= 0) {
+                asyncError = error;
+                asyncErrorToken = token;
+            }
+        }
+        TaskManager manager = this.manager;
+        if (manager != null) {
+            manager.complete(this);
+        }
     }
 
     /**
-     * Builds and schedules the {@link TaskChain}.
-     * <br><br>
-     * * <b>This will lock the Chain. No more Chains can be attached.</b>
-     * @param timeInMillis Time to wait before starting the Chain in milliseconds
+     * Stops the chain because one of its elements, or a stage it was waiting on, failed. Its future completes with the error.
      */
-    public void schedule(long timeInMillis) {
-        this.schedule(Duration.ofMillis(timeInMillis));
+    protected void fail(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        this.failure = error;
+        this._cancel(false);
     }
 
     /**
-     * Builds and schedules the {@link TaskChain} with repetition.
-     * It will run the delay first, and each time it finishes it will run the interval.
-     * <br><br>
-     * * <b>This will lock the Chain. No more Chains can be attached.</b>
-     * @param delay Delay before starting the Chain
-     * @param interval Interval between each repetition
+     * Parks the chain on the signal or latch of an element, or lets it through if the latch is open.
+     * Called again when the timeout is due, if the chain is still waiting.
+     *
+     * @return {@code true} if the chain goes on with the next element
      */
-    public void repeat(Duration delay, Duration interval) {
-        this.timeout(interval);
-        this.run(ctx -> {
-            this.index = -1; // Apaño. Luego de correr una función, suma 1 al index, por lo tanto nunca volverá a la primera task si ahora no se mete a -1.
-        });
+    private boolean awaitSignal(SignalElement element, long now) {
+        int state = signalState;
+        if (state == SIGNAL_FIRED) {
+            // Signalled while it was due for its timeout: the completion resumes it
+            awaiting = true;
+            clearNextAction();
+            return false;
+        }
+        if (state == SIGNAL_WAITING) {
+            if (!SIGNAL_STATE.compareAndSet(this, SIGNAL_WAITING, SIGNAL_NONE)) {
+                awaiting = true;
+                clearNextAction();
+                return false;
+            }
+            // The timeout won
+            leaveSignal();
+            awaiting = false;
+            element.timedOut(context);
+            setNextAction(now);
+            return true;
+        }
+
+        SignalSlot open = element.isLatch() ? manager.getSignalSlot(element.getName()) : null;
+        if (open != null && open.isOpen()) {
+            saveSignalPayload(element, open.getPayload());
+            setNextAction(now);
+            return true;
+        }
+
+        signalState = SIGNAL_WAITING;
+        awaiting = true;
+        SignalSlot slot = manager.parkOnSignal(element.getName(), this);
+        signalSlot = slot;
+        if (element.isLatch() && slot.isOpen() && SIGNAL_STATE.compareAndSet(this, SIGNAL_WAITING, SIGNAL_NONE)) {
+            // Opened while parking
+            leaveSignal();
+            awaiting = false;
+            saveSignalPayload(element, slot.getPayload());
+            setNextAction(now);
+            return true;
+        }
+
+        if (element.hasTimeout()) {
+            // Sleeps in the schedule queue like a wait, and is only looked at again once the timeout is due
+            setNextAction(now + element.getTimeoutNanos());
+        } else {
+            clearNextAction();
+        }
+        return false;
+    }
+
+    private void saveSignalPayload(SignalElement element, Object payload) {
+        if (element.getKey() != null && payload != null) {
+            context.putReturnData(element.getKey(), payload);
+        }
+    }
+
+    private void leaveSignal() {
+        signalState = SIGNAL_NONE;
+        SignalSlot slot = signalSlot;
+        signalSlot = null;
+        if (slot != null) {
+            manager.leaveSignal(slot, this);
+        }
+    }
+
+    /**
+     * Wakes up a chain parked on a signal. Called by the thread sending it.
+     *
+     * @param payload Payload of the signal
+     * @return {@code false} if the chain wasn't waiting anymore
+     */
+    protected boolean wakeSignal(Object payload) {
+        if (!SIGNAL_STATE.compareAndSet(this, SIGNAL_WAITING, SIGNAL_FIRED)) return false;
+        signalPayload = payload;
+        TaskManager manager = this.manager;
+        if (manager != null) {
+            manager.complete(this);
+        }
+        return true;
+    }
+
+    private void submit(AsyncRunner runner) {
+        track(runner);
+        if (manager.isMetricsEnabled()) {
+            runner.setSubmittedAt(System.nanoTime());
+            manager.getMetrics().onAsyncSubmitted();
+        }
+        try {
+            manager.getExecutor().execute(runner);
+        } catch (RejectedExecutionException e) {
+            untrack(runner);
+            runner.discard();
+            throw e;
+        }
+    }
 
-        this.schedule(delay);
+    private void track(AsyncRunner runner) {
+        synchronized (inFlightLock) {
+            if (inFlight == null) {
+                inFlight = new AsyncRunner[4];
+            } else if (inFlightCount == inFlight.length) {
+                inFlight = Arrays.copyOf(inFlight, inFlightCount << 1);
+            }
+            inFlight[inFlightCount++] = runner;
+        }
+    }
+
+    /**
+     * Called by a runner once it is done, or skipped because it was cancelled before it started.
+     */
+    protected void untrack(AsyncRunner runner) {
+        CompletableFuture<Void> done = null;
+        boolean recycle;
+        synchronized (inFlightLock) {
+            for (int i = 0; i < inFlightCount; i++) {
+                if (inFlight[i] == runner) {
+                    removeInFlight(i);
+                    break;
+                }
+            }
+            if (inFlightCount == 0 && inFlightDone != null) {
+                done = inFlightDone;
+                inFlightDone = null;
+            }
+            recycle = inFlightCount == 0 && recyclePending;
+        }
+        if (done != null) {
+            done.complete(null);
+        }
+        TaskManager manager = this.manager;
+        if (recycle && manager != null) {
+            manager.complete(this);
+        }
+    }
+
+    private void removeInFlight(int i) {
+        inFlight[i] = inFlight[--inFlightCount];
+        inFlight[inFlightCount] = null;
+    }
+
+    private void cancelInFlight(boolean interrupt) {
+        TaskManager manager = this.manager;
+        ExecutorService executor = manager != null ? manager.getExecutor() : null;
+        CompletableFuture<Void> done = null;
+        synchronized (inFlightLock) {
+            for (int i = inFlightCount - 1; i >= 0; i--) {
+                cancelRunner(inFlight[i], i, interrupt, executor);
+            }
+            if (inFlightCount == 0 && inFlightDone != null) {
+                done = inFlightDone;
+                inFlightDone = null;
+            }
+        }
+        if (done != null) {
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Cancels and interrupts one piece of async work of the chain, if it is still in flight.
+     */
+    protected void cancelAsync(AsyncRunner runner) {
+        TaskManager manager = this.manager;
+        ExecutorService executor = manager != null ? manager.getExecutor() : null;
+        synchronized (inFlightLock) {
+            for (int i = 0; i < inFlightCount; i++) {
+                if (inFlight[i] == runner) {
+                    cancelRunner(runner, i, true, executor);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void cancelRunner(AsyncRunner runner, int i, boolean interrupt, ExecutorService executor) {
+        if (!runner.cancel(interrupt) && executor instanceof ThreadPoolExecutor pool && pool.remove(runner)) {
+            // Still queued: it gives its slot back now instead of when a worker picks it up
+            runner.discard();
+            removeInFlight(i);
+        }
+    }
+
+    /**
+     * @return A future completed once no async work of the chain is running
+     */
+    private CompletableFuture<Void> whenInFlightDone() {
+        synchronized (inFlightLock) {
+            if (inFlightCount == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (inFlightDone == null) {
+                inFlightDone = new CompletableFuture<>();
+            }
+            return inFlightDone;
+        }
+    }
+
+    private void advance(long now) {
+        int predictNextElementIndex = index+1;
+
+        if (predictNextElementIndex >= elements.size()) {
+            if (repeatPolicy != null && status == TaskStatus.RUNNING && !cancelled) {
+                nextIteration(now);
+            } else {
+                _finish();
+            }
+        } else {
+            index = predictNextElementIndex;
+            journalChanged();
+        }
+    }
+
+    /**
+     * Goes back to the first element, waiting for the start of the next iteration.
+     * The elements aren't touched, so the chain can share them.
+     */
+    private void nextIteration(long now) {
+        long slot = repeatPolicy.nextSlot(repeatSlot, now, repeatCaughtUp);
+        repeatSlot = slot;
+        // A slot already due is a missed start run late, the count goes back to zero once the chain is on the grid again
+        repeatCaughtUp = slot - now > 0 ? 0 : repeatCaughtUp + 1;
+        index = 0;
+        setNextAction(slot - now > 0 ? slot : now);
+        journalChanged();
+    }
+
+    /**
+     * Tells the journal the state of a persistent chain changed. It is written at the end of the tick.
+     */
+    protected void journalChanged() {
+        if (persistentName == null) return;
+
+        TaskManager manager = this.manager;
+        ChainJournal journal = manager != null ? manager.getJournal() : null;
+        if (journal != null) {
+            journal.markDirty(this);
+        }
+    }
+
+    /**
+     * @return {@code true} if the chain wasn't marked as changed yet
+     */
+    protected boolean markJournalDirty() {
+        if (journalDirty) return false;
+        journalDirty = true;
+        return true;
+    }
+
+    protected void clearJournalDirty() {
+        journalDirty = false;
+    }
+
+    /**
+     * @param now The current time of the manager's clock
+     * @param wait {@code true} to wait for a thread ticking the chain, {@code false} to give up right away
+     * @return The state to save, or {@code null} if the chain is being ticked and {@code wait} is {@code false}
+     */
+    protected ChainJournal.Snapshot journalState(long now, boolean wait) {
+        if (wait) {
+            tickLock.lock();
+        } else if (!tickLock.tryLock()) {
+            return null;
+        }
+        try {
+            if (status != TaskStatus.RUNNING) return ChainJournal.Snapshot.removed(persistentName);
+            long delay = hasNextAction ? Math.max(0, nextAction - now) : 0;
+            return ChainJournal.Snapshot.of(persistentName, index, delay, context);
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    /**
+     * Submits an element the chain waits on, once the async limits let it through.
+     *
+     * @return {@code true} if the chain goes on with the next element
+     */
+    private boolean submitAwaited(FunctionElement element, long now) {
+        AsyncGate managerGate = manager.getAsyncGate();
+        AsyncGate limited = admit(managerGate, now, 1);
+        if (limited != null) {
+            return throttled(limited, element, now);
+        }
+
+        // Parked: not queued again until the manager drains the completion
+        awaiting = true;
+        clearNextAction();
+        AsyncRunner runner = asyncRunner(element, true);
+        runner.admitted(managerGate, groupGate, parkOnRunners());
+        submit(runner);
+        return false;
+    }
+
+    private boolean execute(TaskElement element, long now) {
+        boolean next = true;
+
+        switch (element.getType()) {
+            case WAIT -> {
+                WaitElement waitElement = (WaitElement) element;
+                setNextAction(now + waitElement.getNanos());
+            }
+            case RUN -> {
+                FunctionElement functionElement = (FunctionElement) element;
+                if (isPromoted(index)) {
+                    // Flagged by the watchdog: runs like an awaited async element so the order of the chain is kept
+                    next = submitAwaited(functionElement, now);
+                } else if (manager.isMetricsEnabled()) {
+                    long start = System.nanoTime();
+                    try {
+                        functionElement.accept(context);
+                    } finally {
+                        manager.getMetrics().onElement(ElementType.RUN, System.nanoTime() - start);
+                    }
+                    setNextAction(now);
+                } else {
+                    functionElement.accept(context);
+                    setNextAction(now);
+                }
+            }
+            case RUN_ASYNC -> {
+                FunctionElement functionElement = (FunctionElement) element;
+                AsyncGate managerGate = manager.getAsyncGate();
+                AsyncGate limited = admit(managerGate, now, 1);
+                if (limited != null) {
+                    next = throttled(limited, functionElement, now);
+                } else {
+                    AsyncRunner runner = asyncRunner(functionElement, false);
+                    runner.admitted(managerGate, groupGate, 0);
+                    submit(runner);
+                    setNextAction(now);
+                }
+            }
+            case RUN_ASYNC_AWAIT -> next = submitAwaited((FunctionElement) element, now);
+            case RUN_PARALLEL -> {
+                ParallelElement parallelElement = (ParallelElement) element;
+                AsyncGate managerGate = manager.getAsyncGate();
+                AsyncGate limited = admit(managerGate, now, parallelElement.size());
+                if (limited != null) {
+                    next = throttled(limited, parallelElement, now);
+                } else {
+                    next = false;
+
+                    // Parked until the branch completing the join hands the chain back
+                    awaiting = true;
+                    clearNextAction();
+                    int token = parkOnRunners();
+                    ParallelRun run = new ParallelRun(this, parallelElement, token);
+                    parallelRun = run;
+                    for (AsyncRunner runner : run.getRunners()) {
+                        // Every branch gives back the slot it was admitted with
+                        runner.admitted(managerGate, groupGate, token);
+                        submit(runner);
+                    }
+                }
+            }
+            case AWAIT_SIGNAL -> next = awaitSignal((SignalElement) element, now);
+            case AWAIT_STAGE -> next = awaitStage((StageElement) element, now);
+            case RUN_TIMED -> {
+                TimedFunctionElement timedFunctionElement = (TimedFunctionElement) element;
+                if (timedFunctionElement.getDurationNanos() <= 0) {
+                    long start = manager.isMetricsEnabled() ? System.nanoTime() : 0;
+                    timedFunctionElement.accept(context, TweenEngine.clamp(timedFunctionElement.getEasing().getValue(1)));
+                    if (manager.isMetricsEnabled()) {
+                        manager.getMetrics().onElement(ElementType.RUN_TIMED, System.nanoTime() - start);
+                    }
+                    setNextAction(now);
+                } else {
+                    next = false;
+
+                    // Parked: the manager's tween engine runs every frame and resumes the chain at the end
+                    awaiting = true;
+                    clearNextAction();
+                    manager.startTween(this, timedFunctionElement, now);
+                }
+            }
+        }
+
+        return next;
+    }
+
+    protected TaskChain setManager(@Nullable TaskManager manager) {
+        if (this.manager != null) {
+            this.manager.unregister(this);
+        }
+        this.manager = manager;
+        return this;
+    }
+
+    private void resetContext() {
+        this.context = new Context(this);
+    }
+
+    protected TaskManager getManager() {
+        return manager;
+    }
+
+    protected TaskShard getShard() {
+        return shard;
+    }
+
+    protected void setShard(TaskShard shard) {
+        this.shard = shard;
+    }
+
+    protected Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return {@code true} if the chain is waiting for a time, {@code false} if it is parked or not running
+     */
+    protected boolean hasNextAction() {
+        return hasNextAction;
+    }
+
+    /**
+     * @return Time of the next action without boxing. Only valid if {@link #hasNextAction()}.
+     */
+    protected long nextActionNanos() {
+        return nextAction;
+    }
+
+    protected boolean isQueued() {
+        return queued;
+    }
+
+    protected void setQueued(boolean queued) {
+        this.queued = queued;
+    }
+
+    /**
+     * Invalidates every queue entry this chain had and returns the token for the new one.
+     * Only called from the tick thread.
+     */
+    protected int nextQueueToken() {
+        return ++queueToken;
+    }
+
+    /**
+     * @param token Token of a queue entry
+     * @return {@code true} if the entry is the live one of a running chain, {@code false} if it is a tombstone
+     */
+    protected boolean isQueuedWith(int token) {
+        return token == queueToken && status == TaskStatus.RUNNING;
+    }
+
+    /**
+     * @return How the chain repeats, or {@code null} if it runs once
+     */
+    public RepeatPolicy getRepeatPolicy() {
+        return repeatPolicy;
+    }
+
+    /**
+     * @return Name the chain is saved under, or {@code null} if it isn't persistent
+     */
+    public String getPersistentName() {
+        return persistentName;
+    }
+
+    /**
+     * @return The {@link ChainTemplate} the chain was spawned from, or {@code null}
+     */
+    public ChainTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return Id of the chain, unique in the running JVM. Used in watchdog reports.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return {@code true} if the chain was cancelled since it was last started
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        return status == TaskStatus.FINISHED;
+    }
+
+    public boolean isRunning() {
+        return status == TaskStatus.RUNNING;
+    }
+
+    public boolean isBlocked() {
+        return blocked;
+    }
+
+    public TaskPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return Key deciding the shard this chain is ticked on, or {@code null} if it runs on the main tick thread
+     */
+    public Object getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * @return Key the chain is deduplicated under, or {@code null}
+     */
+    public String getDedupeKey() {
+        return dedupeKey;
+    }
+
+    public DedupePolicy getDedupePolicy() {
+        return dedupePolicy;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public boolean isMainThreadOnly() {
+        return mainThreadOnly;
+    }
+
+    /**
+     * @return Maximum amount of elements executed per tick, or {@code 0} to use the {@link TaskManager} default
+     */
+    public int getMaxStepsPerTick() {
+        return maxStepsPerTick;
+    }
+
+    /**
+     * @return Time of the next action in nanoseconds of the manager's {@link dev.polv.taskmanager.core.clock.Clock},
+     * or {@code null} if the chain isn't waiting for a time
+     */
+    public Long getNextAction() {
+        return hasNextAction ? nextAction : null;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the {@link TaskPriority} used to order due chains when the {@link TaskManager} has a tick budget.
+     * Takes effect the next time the chain is queued.
+     *
+     * @param priority Priority of the chain
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain priority(TaskPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Lets a sharded {@link TaskManager} tick this chain in parallel with others. Chains with equal keys always share a shard,
+     * so they keep running in a deterministic order relative to each other. Only use it for chains that touch thread-safe state.
+     * Takes effect the next time the chain is started or scheduled.
+     *
+     * @param key Affinity key, hashed to pick the shard
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain affinity(Object key) {
+        this.affinity = key;
+        return this;
+    }
+
+    /**
+     * Starts the chain under a key, so starting the same logical job many times in a burst runs it once.
+     * When the chain is started or scheduled while another chain with the same key is pending (scheduled but not running
+     * its first element yet), the policy decides which one runs. A dropped chain ends up cancelled without running.
+     * <br><br>
+     * Keys are shared by every chain of the manager, and looking one up never blocks the tick.
+     *
+     * @param key Key of the job
+     * @param policy What to do with the pending chain of the key
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain dedupe(String key, DedupePolicy policy) {
+        if (key == null || policy == null) {
+            throw new IllegalArgumentException("Dedupe key and policy can't be null");
+        }
+        this.dedupeKey = key;
+        this.dedupePolicy = policy;
+        return this;
+    }
+
+    /**
+     * Saves data in the chain's {@link Context} before it starts, for instance the payload merged by {@link DedupePolicy#MERGE}.
+     *
+     * @param key The {@link ContextKey} of the data
+     * @param value The data
+     * @return Same {@link TaskChain}
+     */
+    public <T> TaskChain with(ContextKey<T> key, T value) {
+        this.context.put(key, value);
+        return this;
+    }
+
+    /**
+     * Saves data in the chain's {@link Context} before it starts.
+     *
+     * @param key The {@link String} key of the data
+     * @param value The data
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain with(String key, Object value) {
+        this.context.putReturnData(key, value);
+        return this;
+    }
+
+    /**
+     * Puts the chain in a group, so its async elements are also subject to the group's limit
+     * (see {@link TaskManager.Builder#asyncLimit(String, AsyncLimit)}).
+     * Takes effect the next time the chain is started or scheduled.
+     *
+     * @param name Name of the group
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain group(String name) {
+        this.group = name;
+        return this;
+    }
+
+    /**
+     * Keeps the chain on the thread calling {@link TaskManager#tick()}, even if it has an affinity key.
+     *
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain mainThreadOnly() {
+        this.mainThreadOnly = true;
+        return this;
+    }
+
+    /**
+     * Lets the chain run several consecutive elements in the same tick. The chain keeps going while the next
+     * element is due, and stops at a wait, an await, a timed element or after {@code steps} elements.
+     *
+     * @param steps Maximum amount of elements executed per tick
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain maxStepsPerTick(int steps) {
+        if (steps <= 0) {
+            throw new IllegalArgumentException("Steps per tick must be positive");
+        }
+        this.maxStepsPerTick = steps;
+        return this;
+    }
+
+    /**
+     * Saves the progress of the chain in the journal of its {@link TaskManager} (see {@link TaskManager.Builder#journal(java.nio.file.Path)})
+     * under a name, so it survives restarts.
+     * <br><br>
+     * Functions can't be saved, so after a restart the chain has to be built again, with the same elements, and started.
+     * If the journal holds a state for its name, it resumes at the element it was on, with the time left on its wait
+     * and the {@link java.io.Serializable} values of its {@link Context}. An element that was running or being awaited is run again.
+     * Waits are kept as wall-clock deadlines, so the time the program was down counts against them.
+     * <br><br>
+     * Only one running chain may use a name at a time.
+     *
+     * @param name Name of the chain, unique in the manager
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain persistent(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Name can't be empty");
+        }
+        this.persistentName = name;
+        return this;
+    }
+
+    /**
+     * Will wait for a certain amount of time before executing next chain.
+     *
+     * @param time Time to wait
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain timeout(Duration time) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(new WaitElement(time));
+        return this;
+    }
+
+    /**
+     * Will wait for a certain amount of time before executing next chain.
+     * @param timeInMillis Time to wait in milliseconds
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain timeout(long timeInMillis) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        return timeout(Duration.ofMillis(timeInMillis));
+    }
+
+    /**
+     * Runs a function synchronously. Will block current thread.
+     *
+     * @param function Function to run
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain run(Consumer<Context> function) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(new FunctionElement(function, false));
+        return this;
+    }
+
+    /**
+     * Runs a function asynchronously (won't wait for it to finish).
+     * @param function Function to run
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain runAsync(Consumer<Context> function) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(new FunctionElement(function, true));
+        return this;
+    }
+
+    /**
+     * Runs a function every tick for a certain amount of time, with the eased progress between 0 and 1.
+     * The function is always called one last time with the final value.
+     *
+     * @param function Function to run, receiving the {@link Context} and the eased progress
+     * @param duration Duration of the function
+     * @param easing {@link Easing} applied to the progress
+     * @return Same {@link TaskChain}
+     */
+    // Lambdas never reach the deprecated BiConsumer overload, its varargs only apply when nothing else does
+    @SuppressWarnings("overloads")
+    public TaskChain runTimed(ObjDoubleConsumer<Context> function, Duration duration, Easing easing) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(TimedFunctionElement.of(function, duration, easing));
+        return this;
+    }
+
+    /**
+     * Runs a function every tick for a certain amount of time, with the linear progress between 0 and 1.
+     *
+     * @param function Function to run, receiving the {@link Context} and the progress
+     * @param duration Duration of the function
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain runTimed(ObjDoubleConsumer<Context> function, Duration duration) {
+        return runTimed(function, duration, Easing.LINEAR);
+    }
+
+    /**
+     * Runs a function every tick for a certain amount of time, with the progress boxed into a {@link Double}.
+     * <br><br>
+     * The easing is a varargs parameter so that lambdas keep resolving to {@link #runTimed(ObjDoubleConsumer, Duration, Easing)},
+     * only functions already typed as {@link BiConsumer} end up here.
+     *
+     * @param function Function to run, receiving the {@link Context} and the eased progress
+     * @param duration Duration of the function
+     * @param easing {@link Easing} applied to the progress, linear if none is given
+     * @return Same {@link TaskChain}
+     * @throws IllegalArgumentException If more than one {@link Easing} is given
+     * @deprecated Boxes the progress every tick. Use {@link #runTimed(ObjDoubleConsumer, Duration, Easing)}.
+     */
+    @Deprecated
+    @SuppressWarnings("overloads")
+    public TaskChain runTimed(BiConsumer<Context, Double> function, Duration duration, Easing... easing) {
+        if (easing.length > 1) {
+            throw new IllegalArgumentException("Only one easing can be given");
+        }
+        return runTimed(function::accept, duration, easing.length == 0 ? Easing.LINEAR : easing[0]);
+    }
+
+    /**
+     * Runs a function asynchronously and waits for it to finish before continuing.
+     * If the function throws, the chain is stopped and {@link #toFuture()} completes with the error.
+     *
+     * @param function Function to run
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain runAsyncAwait(Consumer<Context> function) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(new FunctionElement(function, true, true));
+        return this;
+    }
+
+    /**
+     * Runs every function on the executor at once, and continues once all of them have returned.
+     *
+     * @param branches Functions to run
+     * @return Same {@link TaskChain}
+     */
+    @SafeVarargs
+    public final TaskChain allOf(Consumer<Context>... branches) {
+        List<Function<Context, ?>> functions = new ArrayList<>(branches.length);
+        for (Consumer<Context> branch : branches) {
+            functions.add(asFunction(branch));
+        }
+        return parallel(ParallelElement.Join.ALL, null, functions);
+    }
+
+    /**
+     * Runs every function on the executor at once, and continues once all of them have returned.
+     * Their results are saved in the {@link Context} as a {@link List}, in the order of the functions,
+     * with {@code null} for the ones that threw.
+     *
+     * @param key Key to save the results under
+     * @param branches Functions to run
+     * @return Same {@link TaskChain}
+     */
+    @SafeVarargs
+    public final TaskChain allOf(String key, Function<Context, ?>... branches) {
+        List<Function<Context, ?>> functions = new ArrayList<>(branches.length);
+        for (Function<Context, ?> branch : branches) {
+            functions.add(branch);
+        }
+        return parallel(ParallelElement.Join.ALL, key, functions);
+    }
+
+    /**
+     * Runs every function on the executor at once, and continues as soon as one of them returns.
+     * The others are cancelled. If all of them throw, continues after the last one.
+     *
+     * @param branches Functions to run
+     * @return Same {@link TaskChain}
+     */
+    @SafeVarargs
+    public final TaskChain anyOf(Consumer<Context>... branches) {
+        List<Function<Context, ?>> functions = new ArrayList<>(branches.length);
+        for (Consumer<Context> branch : branches) {
+            functions.add(asFunction(branch));
+        }
+        return parallel(ParallelElement.Join.ANY, null, functions);
+    }
+
+    /**
+     * Runs every function on the executor at once, and continues as soon as one of them returns.
+     * Its result is saved in the {@link Context}, and the others are cancelled.
+     *
+     * @param key Key to save the first result under
+     * @param branches Functions to run
+     * @return Same {@link TaskChain}
+     */
+    @SafeVarargs
+    public final TaskChain anyOf(String key, Function<Context, ?>... branches) {
+        List<Function<Context, ?>> functions = new ArrayList<>(branches.length);
+        for (Function<Context, ?> branch : branches) {
+            functions.add(branch);
+        }
+        return parallel(ParallelElement.Join.ANY, key, functions);
+    }
+
+    private TaskChain parallel(ParallelElement.Join join, String key, List<Function<Context, ?>> branches) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(new ParallelElement(branches, join, key));
+        return this;
+    }
+
+    private static Function<Context, ?> asFunction(Consumer<Context> consumer) {
+        return context -> {
+            consumer.accept(context);
+            return null;
+        };
+    }
+
+    /**
+     * Starts non-blocking work and waits for the {@link CompletionStage} it returns, without holding a thread.
+     * If the stage fails, the chain is stopped and {@link #toFuture()} completes with the error.
+     *
+     * @param function Function starting the work. It runs on the tick thread, so it should return right away.
+     * @return Same {@link TaskChain}
+     */
+    public <T> TaskChain runStage(Function<Context, ? extends CompletionStage<T>> function) {
+        return stage(new StageElement(function, null, null));
+    }
+
+    /**
+     * Starts non-blocking work and waits for the {@link CompletionStage} it returns, then saves its result.
+     *
+     * @param function Function starting the work. It runs on the tick thread, so it should return right away.
+     * @param key Key to save the result under, read with {@link Context#getReturnData(String)}
+     * @return Same {@link TaskChain}
+     */
+    public <T> TaskChain runStage(Function<Context, ? extends CompletionStage<T>> function, String key) {
+        return stage(new StageElement(function, key, null));
+    }
+
+    /**
+     * Starts non-blocking work and waits for the {@link CompletionStage} it returns, then saves its result.
+     *
+     * @param function Function starting the work. It runs on the tick thread, so it should return right away.
+     * @param key Key to save the result under, read with {@link Context#get(ContextKey)}
+     * @return Same {@link TaskChain}
+     */
+    public <T> TaskChain runStage(Function<Context, ? extends CompletionStage<T>> function, ContextKey<T> key) {
+        return stage(new StageElement(function, null, key));
+    }
+
+    private TaskChain stage(StageElement element) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(element);
+        return this;
+    }
+
+    /**
+     * @return A future completed with the chain's {@link Context} once it runs past its last element. It is cancelled
+     * if the chain is cancelled or dropped by its dedupe key, and completes exceptionally if a stage of the chain failed.
+     * A chain that is started again gets a new future.
+     */
+    public CompletableFuture<Context> toFuture() {
+        synchronized (inFlightLock) {
+            if (status == TaskStatus.FINISHED) {
+                CompletableFuture<Context> finished = new CompletableFuture<>();
+                completeFuture(finished);
+                return finished;
+            }
+            if (completion == null) {
+                completion = new CompletableFuture<>();
+            }
+            return completion;
+        }
+    }
+
+    private CompletableFuture<Context> takeCompletion() {
+        synchronized (inFlightLock) {
+            CompletableFuture<Context> completion = this.completion;
+            this.completion = null;
+            return completion;
+        }
+    }
+
+    private void completeFuture(CompletableFuture<Context> completion) {
+        if (completion == null) return;
+        Throwable failure = this.failure;
+        if (failure != null) {
+            completion.completeExceptionally(failure);
+        } else if (cancelled) {
+            completion.completeExceptionally(new CancellationException("TaskChain was cancelled"));
+        } else {
+            completion.complete(context);
+        }
+    }
+
+    /**
+     * Parks the chain until {@link TaskManager#signal(String, Object)} is called with the name. A parked chain costs nothing per tick.
+     *
+     * @param name Name of the signal
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain awaitSignal(String name) {
+        return awaitSignal(name, null, null, null);
+    }
+
+    /**
+     * Parks the chain until {@link TaskManager#signal(String, Object)} is called with the name, and saves the payload.
+     *
+     * @param name Name of the signal
+     * @param key Key to save the payload under, read with {@link Context#getReturnData(String)}
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain awaitSignal(String name, String key) {
+        return awaitSignal(name, key, null, null);
+    }
+
+    /**
+     * Parks the chain until {@link TaskManager#signal(String, Object)} is called with the name, or until the timeout.
+     *
+     * @param name Name of the signal
+     * @param key Key to save the payload under, or {@code null}
+     * @param timeout Maximum time to wait, or {@code null} to wait forever
+     * @param onTimeout Run on the tick thread if the timeout is reached, before the chain continues. Can be {@code null}.
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain awaitSignal(String name, String key, Duration timeout, Consumer<Context> onTimeout) {
+        return signal(new SignalElement(name, false, key, timeout, onTimeout));
+    }
+
+    /**
+     * Parks the chain until the latch is opened with {@link TaskManager#openLatch(String, Object)}. If it is already open,
+     * the chain goes on right away.
+     *
+     * @param name Name of the latch
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain awaitLatch(String name) {
+        return awaitLatch(name, null, null, null);
+    }
+
+    /**
+     * Parks the chain until the latch is opened, and saves the payload it was opened with.
+     *
+     * @param name Name of the latch
+     * @param key Key to save the payload under, read with {@link Context#getReturnData(String)}
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain awaitLatch(String name, String key) {
+        return awaitLatch(name, key, null, null);
+    }
+
+    /**
+     * Parks the chain until the latch is opened, or until the timeout.
+     *
+     * @param name Name of the latch
+     * @param key Key to save the payload under, or {@code null}
+     * @param timeout Maximum time to wait, or {@code null} to wait forever
+     * @param onTimeout Run on the tick thread if the timeout is reached, before the chain continues. Can be {@code null}.
+     * @return Same {@link TaskChain}
+     */
+    public TaskChain awaitLatch(String name, String key, Duration timeout, Consumer<Context> onTimeout) {
+        return signal(new SignalElement(name, true, key, timeout, onTimeout));
+    }
+
+    private TaskChain signal(SignalElement element) {
+        if (this.blocked) {
+            throw new IllegalStateException("TaskChain is blocked");
+        }
+
+        elements.add(element);
+        return this;
+    }
+
+    /**
+     * Cancels the chain. No more elements are run, async work that hasn't started yet is dropped,
+     * and the threads running its async work are interrupted.
+     *
+     * @return A future completed once no async work of the chain is running anymore
+     */
+    public CompletableFuture<Void> cancel() {
+        return cancel(Duration.ZERO);
+    }
+
+    /**
+     * Cancels the chain, giving its running async work some time to stop on its own. No more elements are run, and async work
+     * that hasn't started yet is dropped. Running work sees {@link Context#isCancelled()} right away, and is interrupted if it
+     * is still running when the grace period ends.
+     *
+     * @param gracePeriod Time to wait before interrupting the threads still running async work of the chain
+     * @return A future completed once no async work of the chain is running anymore
+     */
+    public CompletableFuture<Void> cancel(Duration gracePeriod) {
+        this._cancel(gracePeriod.isZero() || gracePeriod.isNegative());
+
+        CompletableFuture<Void> done = whenInFlightDone();
+        if (!done.isDone() && !(gracePeriod.isZero() || gracePeriod.isNegative())) {
+            CompletableFuture.delayedExecutor(gracePeriod.toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> this.cancelInFlight(true));
+        }
+        return done;
+    }
+
+    /**
+     * Builds and runs the {@link TaskChain}.
+     * <br><br>
+     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     */
+    public void start() {
+        this._start();
+    }
+
+    /**
+     * Builds and schedules the {@link TaskChain}.
+     * <br><br>
+     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     * @param time Time to wait before starting the Chain
+     */
+    public void schedule(Duration time) {
+        this._schedule(time);
+    }
+
+    /**
+     * Builds and schedules the {@link TaskChain}.
+     * <br><br>
+     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     * @param timeInMillis Time to wait before starting the Chain in milliseconds
+     */
+    public void schedule(long timeInMillis) {
+        this.schedule(Duration.ofMillis(timeInMillis));
+    }
+
+    /**
+     * Builds and schedules the {@link TaskChain} with repetition.
+     * It will run the delay first, and each time it finishes it will run the interval.
+     * Same as {@code repeat(delay, RepeatPolicy.fixedDelay(interval))}.
+     * <br><br>
+     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     * @param delay Delay before starting the Chain
+     * @param interval Interval between each repetition
+     */
+    public void repeat(Duration delay, Duration interval) {
+        this.repeat(delay, RepeatPolicy.fixedDelay(interval));
+    }
+
+    /**
+     * Builds and runs the {@link TaskChain} with repetition, until it is cancelled.
+     * <br><br>
+     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     * @param policy When each iteration starts
+     */
+    public void repeat(RepeatPolicy policy) {
+        this.repeat(Duration.ZERO, policy);
+    }
+
+    /**
+     * Builds and schedules the {@link TaskChain} with repetition, until it is cancelled.
+     * With a fixed rate, every iteration starts a multiple of the period after the first one.
+     * <br><br>
+     * * <b>This will lock the Chain. No more Chains can be attached.</b>
+     * @param delay Delay before the first iteration
+     * @param policy When each iteration starts
+     */
+    public void repeat(Duration delay, RepeatPolicy policy) {
+        this.repeatPolicy = policy;
+        this._schedule(delay.plusNanos(policy.nextJitter()));
     }
 }
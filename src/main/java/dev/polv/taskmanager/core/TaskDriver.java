@@ -0,0 +1,74 @@
+package dev.polv.taskmanager.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread ticking a self-driven {@link TaskManager}.
+ * <br><br>
+ * Sleeps with {@link LockSupport#parkNanos(Object, long)} until the earliest next action of its shards and
+ * is woken early whenever a chain is submitted to, or resumed in, one of them. With nothing scheduled it parks
+ * until woken, so an idle manager never spins.
+ */
+class TaskDriver implements Runnable {
+
+    private final TaskManager manager;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile boolean sleeping;
+
+    TaskDriver(TaskManager manager) {
+        this.manager = manager;
+        this.thread = new Thread(this, "PolTaskManager-" + manager.getId() + "-driver");
+        this.thread.setDaemon(true);
+        this.running = false;
+        this.sleeping = false;
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Wakes the driver if it is sleeping. Called after something was offered to one of its shards.
+     */
+    void wakeup() {
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long delay;
+            try {
+                delay = manager.tickDriven();
+            } catch (RuntimeException | Error e) {
+                // A failing chain must not stop every other chain of the manager
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                // Backs off for a frame, so an error repeating every tick can't spin the thread
+                if (running) {
+                    LockSupport.parkNanos(this, manager.getDriverFrameNanos());
+                }
+                continue;
+            }
+
+            sleeping = true;
+            // Checked after publishing sleeping, so a submission racing with us either sees it or is seen here
+            if (running && !manager.hasDrivenWork()) {
+                if (delay == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                }
+            }
+            sleeping = false;
+        }
+    }
+}
@@ -1,38 +1,558 @@
 package dev.polv.taskmanager.core;
 
 
-import java.util.ArrayList;
-import java.util.List;
+import dev.polv.taskmanager.core.clock.Clock;
+import dev.polv.taskmanager.core.elements.TimedFunctionElement;
+import dev.polv.taskmanager.core.metrics.TaskMetrics;
+import dev.polv.taskmanager.utils.ExecutorUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
 
 public class TaskManager {
 
+    private static final TaskShard[] NO_SHARDS = new TaskShard[0];
+    private static final long DEFAULT_DRIVER_FRAME_NANOS = Duration.ofMillis(1).toNanos();
+
     private final String id;
-    private final List<TaskChain> tasks;
+    private final Clock clock;
+    private final TaskMetrics metrics;
+    private final boolean metricsEnabled;
+    private final boolean watchdogEnabled;
+    private final TaskShard hostShard;
+    private final TaskShard defaultShard;
+    private final TaskShard[] shards;
+    private final ForkJoinPool shardPool;
+    private final RecursiveAction[] shardActions;
+    private final long tickBudgetNanos;
+    private final int maxExecutionsPerTick;
+    private final int maxStepsPerTick;
+    private final TickStats stats;
+    private final TaskDriver driver;
+    private final TickStats driverStats;
+    private final long driverFrameNanos;
+    private final TaskWatchdog watchdog;
+    private final ChainJournal journal;
+    private final AsyncGate asyncGate;
+    private final Map<String, AsyncGate> groupGates;
+    private final ConcurrentHashMap<String, TaskChain> pendingByKey;
+    private final ConcurrentHashMap<String, SignalSlot> signals;
     private final ExecutorService executor;
+    private final boolean ownsExecutor;
 
     protected TaskManager(String id) {
-        this.id = id;
-        this.tasks = new ArrayList<>();
-        this.executor = Executors.newCachedThreadPool();
+        this(new Builder().id(id));
+    }
+
+    protected TaskManager(Builder builder) {
+        this.id = builder.id != null ? builder.id : UUID.randomUUID().toString();
+        this.clock = builder.clock;
+        this.metrics = builder.metrics;
+        this.metricsEnabled = builder.metrics != TaskMetrics.NOOP;
+        this.journal = builder.journalDirectory != null ? ChainJournal.open(this, builder.journalDirectory) : null;
+        this.watchdogEnabled = builder.watchdogListener != null;
+        this.hostShard = new TaskShard(this);
+        this.defaultShard = builder.selfDriven ? new TaskShard(this) : hostShard;
+        this.shards = new TaskShard[builder.shards];
+        for (int i = 0; i < shards.length; i++) {
+            this.shards[i] = new TaskShard(this);
+        }
+        this.shardPool = builder.shardPool != null ? builder.shardPool : ForkJoinPool.commonPool();
+        this.shardActions = new RecursiveAction[shards.length];
+        this.tickBudgetNanos = builder.tickBudgetNanos;
+        this.maxExecutionsPerTick = builder.maxExecutionsPerTick;
+        this.maxStepsPerTick = builder.maxStepsPerTick;
+        this.stats = new TickStats();
+        long now = clock.nanoTime();
+        this.asyncGate = builder.asyncLimit != null ? new AsyncGate(builder.asyncLimit, now) : null;
+        this.groupGates = new HashMap<>();
+        builder.groupLimits.forEach((group, limit) -> this.groupGates.put(group, new AsyncGate(limit, now)));
+        this.pendingByKey = new ConcurrentHashMap<>();
+        this.signals = new ConcurrentHashMap<>();
+        this.ownsExecutor = builder.executor == null;
+        this.executor = this.ownsExecutor ? builder.executorType.create(builder.poolSize) : builder.executor;
+
+        this.driverFrameNanos = builder.driverFrameNanos;
+        if (builder.selfDriven) {
+            this.driver = new TaskDriver(this);
+            this.driverStats = new TickStats();
+            this.defaultShard.setDriver(driver);
+            for (TaskShard shard : shards) {
+                shard.setDriver(driver);
+            }
+            this.driver.start();
+        } else {
+            this.driver = null;
+            this.driverStats = null;
+        }
+
+        if (watchdogEnabled) {
+            ElementProbe[] probes = new ElementProbe[shards.length + (defaultShard != hostShard ? 2 : 1)];
+            int i = 0;
+            probes[i++] = hostShard.getProbe();
+            if (defaultShard != hostShard) {
+                probes[i++] = defaultShard.getProbe();
+            }
+            for (TaskShard shard : shards) {
+                probes[i++] = shard.getProbe();
+            }
+            this.watchdog = new TaskWatchdog(this, probes, builder.watchdogThresholdNanos, builder.watchdogListener, builder.promoteSlowElements);
+            this.watchdog.start();
+        } else {
+            this.watchdog = null;
+        }
     }
 
+    /**
+     * Runs every {@link TaskChain} whose next action is due.
+     * <br><br>
+     * Chains are kept in a queue ordered by {@link TaskChain#getNextAction()}, so sleeping chains
+     * are not touched until their time comes. Chains started from other threads are handed over
+     * through a lock-free submission queue that is drained at the start of every tick.
+     * Chains awaiting async work are not queued at all until their work completes.
+     * Timed elements are advanced together, in a single loop, before any chain is run.
+     * <br><br>
+     * If a tick budget is set, due chains are run by {@link TaskPriority} and then by how long they have been due,
+     * and the ones left when the budget runs out are the first to run in the next tick.
+     * <br><br>
+     * If the manager is sharded, chains with an affinity key are ticked in parallel on the shard pool,
+     * each shard with its own budget, while the rest run on the calling thread. Returns once every shard is done.
+     * <br><br>
+     * If the manager is self-driven, its driver thread ticks every chain on its own and this method only runs
+     * the chains marked {@link TaskChain#mainThreadOnly()}.
+     * <br><br>
+     * If the manager has a journal, the persistent chains that changed are handed to its writer thread at the end of the tick.
+     * <br><br>
+     * A chain whose element throws is stopped, and the error is rethrown once the rest of its shard has been ticked.
+     * <br><br>
+     * Must always be called from the same thread.
+     */
     public void tick() {
-        new ArrayList<>(tasks).forEach(chain -> {
-            if (!chain.isRunning()) {
-                return;
+        try {
+            if (driver != null) {
+                tickShards(hostShard, NO_SHARDS, stats);
+            } else {
+                tickShards(hostShard, shards, stats);
+            }
+        } finally {
+            // Chains ticked before a failing one still have to be saved
+            if (journal != null) {
+                journal.flush();
+            }
+        }
+    }
+
+    /**
+     * Runs one tick of the shards driven by the driver thread. Only called from the driver thread.
+     *
+     * @return Nanoseconds until the driven shards have something to do, or {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    protected long tickDriven() {
+        long now;
+        try {
+            now = tickShards(defaultShard, shards, driverStats);
+        } finally {
+            if (journal != null) {
+                journal.flush();
+            }
+        }
+
+        long delay = defaultShard.delayUntilNextAction(now, driverFrameNanos);
+        for (TaskShard shard : shards) {
+            delay = Math.min(delay, shard.delayUntilNextAction(now, driverFrameNanos));
+        }
+        return delay;
+    }
+
+    /**
+     * @return {@code true} if chains were submitted to or resumed in a driven shard since its last tick
+     */
+    protected boolean hasDrivenWork() {
+        if (defaultShard.hasPendingWork()) return true;
+        for (TaskShard shard : shards) {
+            if (shard.hasPendingWork()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ticks {@code first} on the calling thread and {@code parallel} on the shard pool.
+     *
+     * @return Time of the tick
+     */
+    private long tickShards(TaskShard first, TaskShard[] parallel, TickStats stats) {
+        long startNanos = System.nanoTime();
+        long budgetDeadline = tickBudgetNanos > 0 ? startNanos + tickBudgetNanos : 0;
+        long now = clock.nanoTime();
+
+        for (int i = 0; i < parallel.length; i++) {
+            RecursiveAction action = parallel[i].prepare(now, budgetDeadline, maxExecutionsPerTick, maxStepsPerTick);
+            shardActions[i] = action;
+            shardPool.execute(action);
+        }
+
+        int executed = 0;
+        int deferred = 0;
+        try {
+            first.tick(now, budgetDeadline, maxExecutionsPerTick, maxStepsPerTick);
+            executed += first.getExecuted();
+            deferred += first.getDeferred();
+        } finally {
+            // Always wait for every shard, their tasks are reused by the next tick
+            for (int i = 0; i < parallel.length; i++) {
+                shardActions[i].quietlyJoin();
+                executed += parallel[i].getExecuted();
+                deferred += parallel[i].getDeferred();
+            }
+        }
+
+        for (int i = 0; i < parallel.length; i++) {
+            // Rethrows whatever a chain in the shard threw
+            shardActions[i].join();
+        }
+
+        long duration = System.nanoTime() - startNanos;
+        stats.record(executed, deferred, duration);
+        metrics.onTick(duration, executed, deferred);
+        return now;
+    }
+
+    /**
+     * @return Counters of the last {@link #tick()} and totals since the manager was created
+     */
+    public TickStats getTickStats() {
+        return stats;
+    }
+
+    /**
+     * @return The {@link TaskMetrics} set in the builder, {@link TaskMetrics#NOOP} by default.
+     * Use {@link TaskMetrics#snapshot()} to read what was recorded.
+     */
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return {@code false} if metrics are disabled, so callers can skip reading the time for them
+     */
+    protected boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * @return Admission state of the limit on every async element, or {@code null} if there is none
+     */
+    protected AsyncGate getAsyncGate() {
+        return asyncGate;
+    }
+
+    /**
+     * @param group Group of a chain, can be {@code null}
+     * @return Admission state of the group's limit, or {@code null} if it has none
+     */
+    protected AsyncGate getAsyncGate(String group) {
+        return group != null ? groupGates.get(group) : null;
+    }
+
+    /**
+     * Registers a chain being started under its dedupe key, applying its {@link DedupePolicy} to the chain pending under
+     * the same key. Safe to call from any thread.
+     *
+     * @param taskChain The {@link TaskChain} being started, already marked pending
+     * @return {@code false} if the chain was dropped, or merged into the pending one, and must not run
+     */
+    protected boolean enterKey(TaskChain taskChain) {
+        String key = taskChain.getDedupeKey();
+        DedupePolicy policy = taskChain.getDedupePolicy();
+        if (policy == DedupePolicy.DEBOUNCE) {
+            TaskChain previous = pendingByKey.put(key, taskChain);
+            if (previous != null && previous.replaceKeyed()) {
+                previous._cancel(false);
+            }
+            return true;
+        }
+
+        // The thread ticking the pending chain removes it from the map before running it, so it waits for the merge
+        TaskChain current = pendingByKey.compute(key, (k, pending) -> {
+            if (pending == null || !pending.isKeyPending()) {
+                return taskChain;
+            }
+            if (policy == DedupePolicy.MERGE) {
+                pending.getContext().merge(taskChain.getContext());
             }
-            chain.tick();
+            return pending;
         });
+        return current == taskChain;
+    }
+
+    /**
+     * Removes a chain from its dedupe key, if it still holds it.
+     *
+     * @param taskChain The {@link TaskChain} leaving its key
+     */
+    protected void leaveKey(TaskChain taskChain) {
+        pendingByKey.remove(taskChain.getDedupeKey(), taskChain);
+    }
+
+    /**
+     * @param key Dedupe key of a chain
+     * @return {@code true} if a chain started under the key hasn't started running yet
+     */
+    public boolean isPending(String key) {
+        TaskChain pending = pendingByKey.get(key);
+        return pending != null && pending.isKeyPending();
+    }
+
+    /**
+     * Wakes up every chain waiting on a signal with {@link TaskChain#awaitSignal(String)}. They continue on the next tick
+     * of their shard. Chains that start waiting afterwards wait for the next signal. Safe to call from any thread.
+     *
+     * @param name Name of the signal
+     * @param payload Value saved in the context of every chain woken up, under the key of its element. Can be {@code null}.
+     * @return Amount of chains woken up
+     */
+    public int signal(String name, Object payload) {
+        SignalSlot slot = signals.get(name);
+        if (slot == null) return 0;
+        int woken = slot.fire(payload);
+        release(slot);
+        return woken;
+    }
+
+    /**
+     * Wakes up every chain waiting on a signal, without a payload.
+     *
+     * @param name Name of the signal
+     * @return Amount of chains woken up
+     */
+    public int signal(String name) {
+        return signal(name, null);
+    }
+
+    /**
+     * Opens a latch: wakes up every chain waiting on it with {@link TaskChain#awaitLatch(String)}, and lets the ones that
+     * get to it later through right away, until it is closed. Safe to call from any thread.
+     *
+     * @param name Name of the latch
+     * @param payload Value saved in the context of every chain let through, under the key of its element. Can be {@code null}.
+     * @return Amount of chains woken up
+     */
+    public int openLatch(String name, Object payload) {
+        SignalSlot slot = signals.compute(name, (k, current) -> {
+            SignalSlot opened = current != null ? current : new SignalSlot(k);
+            opened.open(payload);
+            return opened;
+        });
+        return slot.fire(payload);
+    }
+
+    /**
+     * Closes a latch, so chains getting to it wait again.
+     *
+     * @param name Name of the latch
+     */
+    public void closeLatch(String name) {
+        signals.computeIfPresent(name, (k, slot) -> {
+            slot.close();
+            return slot.isUnused() ? null : slot;
+        });
+    }
+
+    /**
+     * @param name Name of a signal or latch
+     * @return Its waiters, or {@code null} if nobody waits on it and it isn't an open latch
+     */
+    protected SignalSlot getSignalSlot(String name) {
+        return signals.get(name);
+    }
+
+    /**
+     * Parks a chain on a signal or latch, creating its slot if needed.
+     *
+     * @param name Name of the signal or latch
+     * @param chain Chain waiting on it
+     * @return The slot the chain was added to
+     */
+    protected SignalSlot parkOnSignal(String name, TaskChain chain) {
+        return signals.compute(name, (k, slot) -> {
+            SignalSlot parked = slot != null ? slot : new SignalSlot(k);
+            parked.add(chain);
+            return parked;
+        });
+    }
+
+    /**
+     * Takes a chain off a signal or latch, and forgets the slot if it was the last one waiting on it.
+     *
+     * @param slot Slot the chain was parked on
+     * @param chain Chain leaving it
+     */
+    protected void leaveSignal(SignalSlot slot, TaskChain chain) {
+        slot.remove(chain);
+        release(slot);
+    }
+
+    private void release(SignalSlot slot) {
+        if (!slot.isUnused()) return;
+        signals.computeIfPresent(slot.getName(), (k, current) -> current == slot && current.isUnused() ? null : current);
+    }
+
+    /**
+     * @return The journal of persistent chains, or {@code null} if the manager has none
+     */
+    protected ChainJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Lists the persistent chains found in the journal that haven't been started again since the manager was created.
+     * Build and start them again with {@link TaskChain#persistent(String)} to resume them.
+     *
+     * @return Names of the saved chains, empty if the manager has no journal
+     */
+    public Set<String> getSavedChains() {
+        return journal != null ? journal.getSavedNames() : Collections.emptySet();
+    }
+
+    /**
+     * @return {@code true} if elements are watched by a {@link TaskWatchdog}
+     */
+    protected boolean hasWatchdog() {
+        return watchdogEnabled;
+    }
+
+    /**
+     * @return Counters of the driver thread, or {@code null} if the manager isn't self-driven
+     */
+    public TickStats getDriverTickStats() {
+        return driverStats;
+    }
+
+    /**
+     * @return Interval between frames of the driver thread while tweens are running
+     */
+    protected long getDriverFrameNanos() {
+        return driverFrameNanos;
+    }
+
+    public boolean isSelfDriven() {
+        return driver != null;
+    }
+
+    /**
+     * @return The shard a chain belongs to. Chains marked main-thread only always go to the host shard,
+     * ticked by {@link #tick()}, and chains without an affinity key go to the default one.
+     */
+    private TaskShard shardFor(TaskChain taskChain) {
+        if (taskChain.isMainThreadOnly()) {
+            return hostShard;
+        }
+        Object affinity = taskChain.getAffinity();
+        if (shards.length == 0 || affinity == null) {
+            return defaultShard;
+        }
+
+        int hash = affinity.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    /**
+     * Hands a chain whose timed element has started to its shard's tween engine. Only called from the thread ticking the chain.
+     *
+     * @param taskChain The parked {@link TaskChain}
+     * @param element The timed element it is running
+     * @param now Time of the current tick
+     */
+    protected void startTween(TaskChain taskChain, TimedFunctionElement element, long now) {
+        taskChain.getShard().startTween(taskChain, element, now);
+    }
+
+    /**
+     * Hands a chain that has just been started or scheduled over to the thread ticking its shard. Safe to call from any thread.
+     *
+     * @param taskChain The {@link TaskChain} to queue
+     */
+    protected void schedule(TaskChain taskChain) {
+        TaskShard previous = taskChain.getShard();
+        TaskShard shard = shardFor(taskChain);
+        if (previous != null && previous != shard) {
+            previous.discard(taskChain);
+        }
+        taskChain.setShard(shard);
+        shard.submit(taskChain);
+    }
+
+    /**
+     * Hands a parked chain whose work has finished back to the thread ticking its shard. Safe to call from any thread.
+     *
+     * @param taskChain The {@link TaskChain} to resume
+     */
+    protected void complete(TaskChain taskChain) {
+        TaskShard shard = taskChain.getShard();
+        if (shard != null) {
+            shard.complete(taskChain);
+        }
+    }
+
+    /**
+     * Called when a chain stops running or leaves this manager while it may still be queued.
+     *
+     * @param taskChain The {@link TaskChain} that left
+     */
+    protected void discard(TaskChain taskChain) {
+        TaskShard shard = taskChain.getShard();
+        if (shard != null) {
+            shard.discard(taskChain);
+        }
     }
 
     protected ExecutorService getExecutor() {
         return executor;
     }
 
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The {@link Clock} chains of this manager are scheduled with
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Stops the driver thread of a self-driven manager and the watchdog thread, writes and closes the journal, and shuts down the executor used by async elements
+     * unless it was supplied with {@link Builder#executor(ExecutorService)}.
+     * Async work that was already submitted is allowed to finish.
+     */
+    public void shutdown() {
+        if (driver != null) {
+            driver.stop();
+        }
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
     /**
      * @return new {@link TaskManager} from this manager
      */
@@ -47,6 +567,13 @@ public class TaskManager {
         return new TaskManager(UUID.randomUUID().toString());
     }
 
+    /**
+     * @return new {@link Builder} to configure a {@link TaskManager}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     /**
      * Creates a {@link TaskChain} and runs {@link TaskChain#run(Consumer)}
      *
@@ -54,9 +581,7 @@ public class TaskManager {
      * @return new {@link TaskChain}
      */
     public TaskChain run(Consumer<Context> function) {
-        TaskChain task =TaskChain.create(this).run(function);
-        this.tasks.add(task);
-        return task;
+        return TaskChain.create(this).run(function);
     }
 
     /**
@@ -66,9 +591,7 @@ public class TaskManager {
      * @return new {@link TaskChain}
      */
     public TaskChain runAsync(Consumer<Context> function) {
-        TaskChain task = TaskChain.create(this).runAsync(function);
-        this.tasks.add(task);
-        return task;
+        return TaskChain.create(this).runAsync(function);
     }
 
     /**
@@ -84,10 +607,319 @@ public class TaskManager {
             throw new IllegalArgumentException("Task is already finished!");
         }
         taskChain.setManager(this);
-        tasks.add(taskChain);
     }
 
     protected void unregister(TaskChain taskChain) {
-        tasks.remove(taskChain);
+        discard(taskChain);
+    }
+
+    public enum ExecutorType {
+        /**
+         * Unbounded pool of platform threads, reused while idle. The default.
+         */
+        CACHED,
+        /**
+         * Fixed amount of platform threads. Extra work waits in the pool's queue.
+         */
+        BOUNDED,
+        /**
+         * A new virtual thread per task (JDK 21+). Falls back to {@link #CACHED} on older JVMs.
+         */
+        VIRTUAL;
+
+        private ExecutorService create(int poolSize) {
+            return switch (this) {
+                case CACHED -> Executors.newCachedThreadPool();
+                case BOUNDED -> Executors.newFixedThreadPool(poolSize);
+                case VIRTUAL -> ExecutorUtils.newVirtualThreadExecutor();
+            };
+        }
+    }
+
+    public static class Builder {
+
+        private String id = null;
+        private Clock clock = Clock.SYSTEM;
+        private TaskMetrics metrics = TaskMetrics.NOOP;
+        private ExecutorType executorType = ExecutorType.CACHED;
+        private int poolSize = 0;
+        private ExecutorService executor = null;
+        private long tickBudgetNanos = 0;
+        private int maxExecutionsPerTick = Integer.MAX_VALUE;
+        private int maxStepsPerTick = 1;
+        private int shards = 0;
+        private ForkJoinPool shardPool = null;
+        private boolean selfDriven = false;
+        private long driverFrameNanos = DEFAULT_DRIVER_FRAME_NANOS;
+        private long watchdogThresholdNanos = 0;
+        private Consumer<SlowElementReport> watchdogListener = null;
+        private boolean promoteSlowElements = false;
+        private Path journalDirectory = null;
+        private AsyncLimit asyncLimit = null;
+        private final Map<String, AsyncLimit> groupLimits = new HashMap<>();
+
+        protected Builder() {
+        }
+
+        /**
+         * @param id Id of the {@link TaskManager}. A random one is used if not set.
+         * @return Same {@link Builder}
+         */
+        public Builder id(String id) {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * @param clock The {@link Clock} to schedule chains with. Defaults to {@link Clock#SYSTEM}.
+         * @return Same {@link Builder}
+         */
+        public Builder clock(Clock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock can't be null");
+            }
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param metrics The {@link TaskMetrics} to report to, for instance a {@link dev.polv.taskmanager.core.metrics.RecordingMetrics}.
+         *                Defaults to {@link TaskMetrics#NOOP}.
+         * @return Same {@link Builder}
+         */
+        public Builder metrics(TaskMetrics metrics) {
+            if (metrics == null) {
+                throw new IllegalArgumentException("Metrics can't be null");
+            }
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Runs async elements on virtual threads, so awaiting chains don't hold a platform thread each.
+         * Falls back to a cached thread pool on JVMs older than 21.
+         *
+         * @return Same {@link Builder}
+         */
+        public Builder virtualThreads() {
+            this.executorType = ExecutorType.VIRTUAL;
+            this.executor = null;
+            return this;
+        }
+
+        /**
+         * Runs async elements on a fixed amount of platform threads.
+         *
+         * @param threads Amount of threads in the pool
+         * @return Same {@link Builder}
+         */
+        public Builder boundedPool(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Pool size must be positive");
+            }
+            this.executorType = ExecutorType.BOUNDED;
+            this.poolSize = threads;
+            this.executor = null;
+            return this;
+        }
+
+        /**
+         * Runs async elements on an executor managed by the caller. {@link TaskManager#shutdown()} won't shut it down.
+         *
+         * @param executor The {@link ExecutorService} to use
+         * @return Same {@link Builder}
+         */
+        public Builder executor(ExecutorService executor) {
+            if (executor == null) {
+                throw new IllegalArgumentException("Executor can't be null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Limits how long a single {@link TaskManager#tick()} keeps starting elements.
+         * Due chains left when the time is up roll over to the next tick.
+         *
+         * @param budget Time budget of each tick
+         * @return Same {@link Builder}
+         */
+        public Builder tickBudget(Duration budget) {
+            if (budget.isNegative() || budget.isZero()) {
+                throw new IllegalArgumentException("Tick budget must be positive");
+            }
+            this.tickBudgetNanos = budget.toNanos();
+            return this;
+        }
+
+        /**
+         * Limits how many elements a single {@link TaskManager#tick()} executes.
+         * Due chains left when the limit is reached roll over to the next tick.
+         *
+         * @param executions Maximum amount of element executions per tick
+         * @return Same {@link Builder}
+         */
+        public Builder maxExecutionsPerTick(int executions) {
+            if (executions <= 0) {
+                throw new IllegalArgumentException("Executions per tick must be positive");
+            }
+            this.maxExecutionsPerTick = executions;
+            return this;
+        }
+
+        /**
+         * Default amount of consecutive due elements a chain may run in a single tick.
+         * Chains can override it with {@link TaskChain#maxStepsPerTick(int)}. Defaults to {@code 1}.
+         *
+         * @param steps Maximum amount of elements a chain executes per tick
+         * @return Same {@link Builder}
+         */
+        public Builder maxStepsPerTick(int steps) {
+            if (steps <= 0) {
+                throw new IllegalArgumentException("Steps per tick must be positive");
+            }
+            this.maxStepsPerTick = steps;
+            return this;
+        }
+
+        /**
+         * Splits the chains that have an affinity key into {@code shards} partitions that are ticked in parallel.
+         * Chains without a key, or marked main-thread only, keep running on the thread calling {@link TaskManager#tick()}.
+         *
+         * @param shards Amount of parallel shards
+         * @return Same {@link Builder}
+         */
+        public Builder shards(int shards) {
+            if (shards < 0) {
+                throw new IllegalArgumentException("Shard count can't be negative");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * @param pool The {@link ForkJoinPool} shards are ticked on. Defaults to {@link ForkJoinPool#commonPool()}.
+         * @return Same {@link Builder}
+         */
+        public Builder shardPool(ForkJoinPool pool) {
+            if (pool == null) {
+                throw new IllegalArgumentException("Shard pool can't be null");
+            }
+            this.shardPool = pool;
+            return this;
+        }
+
+        /**
+         * Ticks the manager from its own thread instead of waiting for {@link TaskManager#tick()}. The thread sleeps until
+         * the earliest next action and wakes up early when a chain is started or resumed, so waits aren't rounded up to
+         * the host's tick rate.
+         * <br><br>
+         * Chains marked {@link TaskChain#mainThreadOnly()} are still only run by {@link TaskManager#tick()}.
+         *
+         * @return Same {@link Builder}
+         */
+        public Builder selfDriven() {
+            this.selfDriven = true;
+            return this;
+        }
+
+        /**
+         * @param interval Time between frames of timed elements run by the driver thread. Defaults to 1 millisecond.
+         * @return Same {@link Builder}
+         */
+        public Builder driverFrameInterval(Duration interval) {
+            if (interval.isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("Frame interval must be positive");
+            }
+            this.driverFrameNanos = interval.toNanos();
+            return this;
+        }
+
+        /**
+         * Starts a watchdog thread that reports every element running for longer than {@code threshold}, with the id of its chain,
+         * its index and a stack sample of the thread running it. Each run of an element is reported once, while it is still running.
+         * <br><br>
+         * The listener is called from the watchdog thread.
+         *
+         * @param threshold Time an element can run before it is reported
+         * @param listener Receives the reports
+         * @return Same {@link Builder}
+         */
+        public Builder watchdog(Duration threshold, Consumer<SlowElementReport> listener) {
+            if (threshold.isNegative() || threshold.isZero()) {
+                throw new IllegalArgumentException("Threshold must be positive");
+            }
+            if (listener == null) {
+                throw new IllegalArgumentException("Listener can't be null");
+            }
+            this.watchdogThresholdNanos = threshold.toNanos();
+            this.watchdogListener = listener;
+            return this;
+        }
+
+        /**
+         * Makes the watchdog move the synchronous elements it reports to the executor. Later runs of the element are awaited
+         * like {@link TaskChain#runAsyncAwait(Consumer)}, so the chain keeps its order but no longer blocks the tick.
+         * Chains marked {@link TaskChain#mainThreadOnly()} are never moved.
+         * <br><br>
+         * Only use it if the functions of your chains can run on another thread.
+         *
+         * @return Same {@link Builder}
+         */
+        public Builder promoteSlowElements() {
+            this.promoteSlowElements = true;
+            return this;
+        }
+
+        /**
+         * Saves the chains marked {@link TaskChain#persistent(String)} to an append-only journal in a directory, so they
+         * can resume after a restart. The state of the chains that changed is taken at the end of every tick, and written
+         * by a background thread, which also compacts the journal as it grows.
+         * <br><br>
+         * Writes survive a crash of the process. An OS crash or a power loss may lose the writes made since the journal was
+         * last compacted or rolled over to a new segment.
+         *
+         * @param directory Directory of the journal. Only one manager may use it at a time.
+         * @return Same {@link Builder}
+         */
+        public Builder journal(Path directory) {
+            this.journalDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Limits the async elements of every chain of the manager, to keep a burst of chains from queuing unbounded work
+         * on the executor. See {@link AsyncLimit}.
+         *
+         * @param limit Limit on the async elements of the manager
+         * @return Same {@link Builder}
+         */
+        public Builder asyncLimit(AsyncLimit limit) {
+            this.asyncLimit = limit;
+            return this;
+        }
+
+        /**
+         * Limits the async elements of the chains in a group, set with {@link TaskChain#group(String)}.
+         * They are also subject to the limit of the manager.
+         *
+         * @param group Name of the group
+         * @param limit Limit on the async elements of the group
+         * @return Same {@link Builder}
+         */
+        public Builder asyncLimit(String group, AsyncLimit limit) {
+            this.groupLimits.put(group, limit);
+            return this;
+        }
+
+        /**
+         * @return new {@link TaskManager}
+         */
+        public TaskManager build() {
+            if (promoteSlowElements && watchdogListener == null) {
+                throw new IllegalStateException("Promoting slow elements needs a watchdog");
+            }
+            return new TaskManager(this);
+        }
     }
 }
@@ -0,0 +1,13 @@
+package dev.polv.taskmanager.core;
+
+/**
+ * Order in which due chains are run when a tick has a budget. All due chains of a higher
+ * priority run before any chain of a lower one.
+ */
+public enum TaskPriority {
+
+    HIGH(),
+    NORMAL(),
+    LOW();
+
+}
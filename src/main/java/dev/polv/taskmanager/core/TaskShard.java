@@ -0,0 +1,320 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.TimedFunctionElement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A partition of the chains of a {@link TaskManager}, with its own schedule queues, tween engine and inboxes.
+ * <br><br>
+ * A shard is only ever ticked by one thread at a time, so the chains in it run in a deterministic order.
+ * Other threads only talk to it through its lock-free submission and completion queues.
+ */
+class TaskShard {
+
+    private static final int MIN_PURGE_TOMBSTONES = 64;
+
+    private final TaskManager manager;
+    private final ConcurrentLinkedQueue<TaskChain> submissions;
+    private final ConcurrentLinkedQueue<TaskChain> completions;
+    private final AtomicInteger tombstones;
+    private final ScheduleQueue[] queues;
+    private final List<TaskChain> ticked;
+    private final TweenEngine tweens;
+    private final List<TaskChain> tweened;
+    private final TickAction action;
+    private volatile TaskDriver driver;
+    private final ElementProbe probe;
+
+    private int executed;
+    private int deferred;
+    private Throwable failure;
+
+    TaskShard(TaskManager manager) {
+        this.manager = manager;
+        this.submissions = new ConcurrentLinkedQueue<>();
+        this.completions = new ConcurrentLinkedQueue<>();
+        this.tombstones = new AtomicInteger();
+        this.queues = new ScheduleQueue[TaskPriority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            this.queues[i] = new ScheduleQueue();
+        }
+        this.ticked = new ArrayList<>();
+        this.probe = manager.hasWatchdog() ? new ElementProbe() : null;
+        this.tweens = new TweenEngine(manager.isMetricsEnabled() ? manager.getMetrics() : null, probe);
+        this.tweened = new ArrayList<>();
+        this.action = new TickAction();
+    }
+
+    /**
+     * Runs every due chain of this shard. See {@link TaskManager#tick()}.
+     *
+     * @param now Time of the current tick
+     * @param budgetDeadline {@link System#nanoTime()} at which the budget runs out, or {@code 0} for no time budget
+     * @param maxExecutions Maximum amount of element executions
+     * @param maxSteps Default maximum amount of elements a chain executes
+     */
+    void tick(long now, long budgetDeadline, int maxExecutions, int maxSteps) {
+        drainSubmissions();
+        drainCompletions(now);
+        purgeIfNeeded();
+        tickTweens(now);
+
+        int executed = 0;
+        int deferred = 0;
+        boolean exhausted = false;
+
+        for (ScheduleQueue queue : queues) {
+            if (exhausted) {
+                deferred += queue.countDue(now, this);
+                continue;
+            }
+
+            while (!queue.isEmpty() && queue.peekKey() - now <= 0) {
+                if (executed >= maxExecutions || (budgetDeadline != 0 && System.nanoTime() - budgetDeadline >= 0)) {
+                    exhausted = true;
+                    deferred += queue.countDue(now, this);
+                    break;
+                }
+
+                int token = queue.peekToken();
+                TaskChain chain = queue.poll();
+                if (!owns(chain) || !chain.isQueuedWith(token)) {
+                    continue;
+                }
+                chain.setQueued(false);
+                int steps = chain.getMaxStepsPerTick() > 0 ? chain.getMaxStepsPerTick() : maxSteps;
+                try {
+                    executed += chain.tick(now, Math.min(steps, maxExecutions - executed));
+                    ticked.add(chain);
+                } catch (RuntimeException | Error e) {
+                    // Stopped, so it doesn't throw again every tick
+                    executed++;
+                    chain.fail(e);
+                    recordFailure(e);
+                }
+            }
+        }
+
+        // Re-inserted after the loop, so a chain that is still due only runs once per tick
+        for (int i = 0; i < ticked.size(); i++) {
+            TaskChain chain = ticked.get(i);
+            if (owns(chain) && chain.isRunning() && chain.hasNextAction()) {
+                enqueue(chain);
+            }
+        }
+        ticked.clear();
+
+        this.executed = executed;
+        this.deferred = deferred;
+
+        recordFailure(tweens.takeFailure());
+        Throwable failure = this.failure;
+        if (failure != null) {
+            // Reported once every other chain of the shard had its turn, the failing chains are already stopped
+            this.failure = null;
+            rethrow(failure);
+        }
+    }
+
+    private void recordFailure(Throwable e) {
+        if (e == null) return;
+        if (failure == null) {
+            failure = e;
+        } else if (failure != e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        throw (RuntimeException) failure;
+    }
+
+    /**
+     * Prepares the reusable task that ticks this shard on a {@link java.util.concurrent.ForkJoinPool}.
+     */
+    RecursiveAction prepare(long now, long budgetDeadline, int maxExecutions, int maxSteps) {
+        action.reinitialize();
+        action.now = now;
+        action.budgetDeadline = budgetDeadline;
+        action.maxExecutions = maxExecutions;
+        action.maxSteps = maxSteps;
+        return action;
+    }
+
+    /**
+     * @return Amount of elements executed in the last tick
+     */
+    int getExecuted() {
+        return executed;
+    }
+
+    /**
+     * @return Amount of due chains left for the next tick in the last tick
+     */
+    int getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * @return The probe to report running elements to, or {@code null} if the manager has no watchdog
+     */
+    ElementProbe getProbe() {
+        return probe;
+    }
+
+    boolean owns(TaskChain chain) {
+        return chain.getManager() == manager && chain.getShard() == this;
+    }
+
+    private void purgeIfNeeded() {
+        int size = 0;
+        for (ScheduleQueue queue : queues) {
+            size += queue.size();
+        }
+        if (tombstones.get() >= Math.max(MIN_PURGE_TOMBSTONES, size >>> 1)) {
+            tombstones.set(0);
+            for (ScheduleQueue queue : queues) {
+                queue.purge(this);
+            }
+        }
+    }
+
+    private void drainSubmissions() {
+        TaskChain chain;
+        while ((chain = submissions.poll()) != null) {
+            if (!owns(chain) || !chain.isRunning()) {
+                continue;
+            }
+            enqueue(chain);
+        }
+    }
+
+    /**
+     * Resumes the chains whose async work finished. Also where finished pooled chains are recycled, since
+     * they hand themselves back through the same queue.
+     */
+    private void drainCompletions(long now) {
+        TaskChain chain;
+        while ((chain = completions.poll()) != null) {
+            if (!owns(chain)) {
+                continue;
+            }
+            chain._resume(now);
+            if (chain.isRunning() && chain.hasNextAction()) {
+                enqueue(chain);
+            } else {
+                chain.recycleIfDone();
+            }
+        }
+    }
+
+    private void tickTweens(long now) {
+        if (tweens.size() == 0) return;
+
+        tweens.tick(now, tweened);
+        for (int i = 0; i < tweened.size(); i++) {
+            TaskChain chain = tweened.get(i);
+            chain._resume(now);
+            if (chain.isRunning() && chain.hasNextAction()) {
+                enqueue(chain);
+            }
+        }
+        tweened.clear();
+    }
+
+    /**
+     * Queues a chain on its next action. Every path scheduling a chain goes through here, so the entry
+     * it may still have in a queue (a deadline a signal or a tween beat, or a reschedule) is counted as a tombstone.
+     */
+    private void enqueue(TaskChain chain) {
+        if (chain.isQueued()) {
+            // The previous entry of a rescheduled chain is left behind as a tombstone
+            tombstones.incrementAndGet();
+        }
+        chain.setQueued(true);
+        queues[chain.getPriority().ordinal()].add(chain, chain.nextActionNanos(), chain.nextQueueToken());
+    }
+
+    /**
+     * Only called from the thread ticking this shard.
+     */
+    void startTween(TaskChain chain, TimedFunctionElement element, long now) {
+        tweens.start(chain, chain.nextQueueToken(), element, now);
+    }
+
+    void submit(TaskChain chain) {
+        submissions.offer(chain);
+        wakeDriver();
+    }
+
+    void complete(TaskChain chain) {
+        completions.offer(chain);
+        wakeDriver();
+    }
+
+    /**
+     * @param driver The driver thread ticking this shard, or {@code null} if it is ticked by {@link TaskManager#tick()}
+     */
+    void setDriver(TaskDriver driver) {
+        this.driver = driver;
+    }
+
+    private void wakeDriver() {
+        TaskDriver driver = this.driver;
+        if (driver != null) {
+            driver.wakeup();
+        }
+    }
+
+    /**
+     * @return {@code true} if chains were submitted or resumed since the last tick
+     */
+    boolean hasPendingWork() {
+        return !submissions.isEmpty() || !completions.isEmpty();
+    }
+
+    /**
+     * Only called from the thread ticking this shard, after a tick.
+     *
+     * @param now Time of the last tick
+     * @param frameNanos Interval between frames while tweens are running
+     * @return Nanoseconds until this shard has something to do, or {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    long delayUntilNextAction(long now, long frameNanos) {
+        long delay = tweens.size() > 0 ? frameNanos : Long.MAX_VALUE;
+        for (ScheduleQueue queue : queues) {
+            if (!queue.isEmpty()) {
+                delay = Math.min(delay, Math.max(0, queue.peekKey() - now));
+            }
+        }
+        return delay;
+    }
+
+    void discard(TaskChain chain) {
+        if (chain.isQueued()) {
+            tombstones.incrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class TickAction extends RecursiveAction {
+
+        private long now;
+        private long budgetDeadline;
+        private int maxExecutions;
+        private int maxSteps;
+
+        @Override
+        protected void compute() {
+            tick(now, budgetDeadline, maxExecutions, maxSteps);
+        }
+    }
+}
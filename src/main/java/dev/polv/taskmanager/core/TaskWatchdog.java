@@ -0,0 +1,86 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.TaskElement;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Thread checking that no element of a {@link TaskManager} runs for longer than a threshold.
+ * <br><br>
+ * It polls the {@link ElementProbe} of every shard a few times per threshold. When an element goes over, it samples
+ * the stack of the thread running it and reports it once, with the chain's id and the element's index.
+ * The tick threads never wait for it.
+ */
+class TaskWatchdog implements Runnable {
+
+    private static final long MIN_INTERVAL_NANOS = 1_000_000;
+
+    private final ElementProbe[] probes;
+    private final long[] reported;
+    private final long thresholdNanos;
+    private final long intervalNanos;
+    private final Consumer<SlowElementReport> listener;
+    private final boolean promote;
+    private final Thread thread;
+    private volatile boolean running;
+
+    TaskWatchdog(TaskManager manager, ElementProbe[] probes, long thresholdNanos, Consumer<SlowElementReport> listener, boolean promote) {
+        this.probes = probes;
+        this.reported = new long[probes.length];
+        this.thresholdNanos = thresholdNanos;
+        this.intervalNanos = Math.max(MIN_INTERVAL_NANOS, thresholdNanos / 4);
+        this.listener = listener;
+        this.promote = promote;
+        this.thread = new Thread(this, "PolTaskManager-" + manager.getId() + "-watchdog");
+        this.thread.setDaemon(true);
+        this.running = false;
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            for (int i = 0; i < probes.length; i++) {
+                check(i);
+            }
+        }
+    }
+
+    private void check(int i) {
+        ElementProbe probe = probes[i];
+        long sequence = probe.getSequence();
+        if ((sequence & 1) == 0 || reported[i] == sequence) return;
+
+        long elapsed = System.nanoTime() - probe.getStartedAt();
+        if (elapsed < thresholdNanos) return;
+
+        TaskChain chain = probe.getChain();
+        TaskElement element = probe.getElement();
+        int index = probe.getIndex();
+        Thread ticking = probe.getThread();
+        StackTraceElement[] stackTrace = ticking.getStackTrace();
+        if (probe.getSequence() != sequence || chain == null || element == null) {
+            // Finished while sampling, the stack belongs to something else
+            return;
+        }
+        reported[i] = sequence;
+
+        boolean promoted = promote && chain.promoteToAsync(index, element);
+        try {
+            listener.accept(new SlowElementReport(chain.getId(), index, element.getType(), elapsed, ticking.getName(), stackTrace, promoted));
+        } catch (RuntimeException e) {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+}
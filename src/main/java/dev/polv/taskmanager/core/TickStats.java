@@ -0,0 +1,65 @@
+package dev.polv.taskmanager.core;
+
+/**
+ * Counters of the last {@link TaskManager#tick()}, plus running totals. Values can be read from any thread.
+ */
+public class TickStats {
+
+    private volatile int executed;
+    private volatile int deferred;
+    private volatile long durationNanos;
+    private volatile long totalExecuted;
+    private volatile long totalDeferred;
+    private volatile long budgetExhaustedTicks;
+
+    protected TickStats() {
+    }
+
+    protected void record(int executed, int deferred, long durationNanos) {
+        this.executed = executed;
+        this.deferred = deferred;
+        this.durationNanos = durationNanos;
+        this.totalExecuted += executed;
+        this.totalDeferred += deferred;
+        if (deferred > 0) {
+            this.budgetExhaustedTicks++;
+        }
+    }
+
+    /**
+     * @return Amount of elements executed in the last tick
+     */
+    public int getExecuted() {
+        return executed;
+    }
+
+    /**
+     * @return Amount of due chains left for the next tick because the budget ran out in the last tick
+     */
+    public int getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * @return Time spent in the last tick, in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getTotalExecuted() {
+        return totalExecuted;
+    }
+
+    public long getTotalDeferred() {
+        return totalDeferred;
+    }
+
+    /**
+     * @return Amount of ticks that ran out of budget before every due chain was run
+     */
+    public long getBudgetExhaustedTicks() {
+        return budgetExhaustedTicks;
+    }
+
+}
@@ -0,0 +1,179 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.TaskElement.ElementType;
+import dev.polv.taskmanager.core.elements.TimedFunctionElement;
+import dev.polv.taskmanager.core.metrics.TaskMetrics;
+import dev.polv.taskmanager.utils.math.Easing;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Advances every running timed element of a {@link TaskManager} in one loop per tick.
+ * <br><br>
+ * Tweens are kept in parallel primitive arrays instead of being ticked through their chains. A chain running a
+ * timed element stays parked, out of the schedule queue, until its tween completes and it is resumed.
+ * <br><br>
+ * A frame that throws only stops its own chain: the tween is removed, the chain fails, and the error is kept
+ * for the shard to report once the tick is over.
+ * Only accessed from the tick thread.
+ */
+class TweenEngine {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TaskMetrics metrics;
+    private final ElementProbe probe;
+    private long[] starts;
+    private long[] durations;
+    private Easing[] easings;
+    private TimedFunctionElement[] elements;
+    private TaskChain[] chains;
+    private int[] tokens;
+    private int size;
+    private Throwable failure;
+
+    /**
+     * @param metrics Receives the time of every frame, or {@code null} if metrics are disabled
+     * @param probe Reports every frame to the watchdog, or {@code null} if the manager has none
+     */
+    TweenEngine(TaskMetrics metrics, ElementProbe probe) {
+        this.metrics = metrics;
+        this.probe = probe;
+        this.starts = new long[INITIAL_CAPACITY];
+        this.durations = new long[INITIAL_CAPACITY];
+        this.easings = new Easing[INITIAL_CAPACITY];
+        this.elements = new TimedFunctionElement[INITIAL_CAPACITY];
+        this.chains = new TaskChain[INITIAL_CAPACITY];
+        this.tokens = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Starts a tween and runs its first frame.
+     *
+     * @param chain The parked {@link TaskChain} running the element
+     * @param token Token the chain was parked with
+     * @param element The timed element
+     * @param now Time of the current tick
+     */
+    void start(TaskChain chain, int token, TimedFunctionElement element, long now) {
+        if (size == chains.length) {
+            int capacity = chains.length << 1;
+            starts = Arrays.copyOf(starts, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            easings = Arrays.copyOf(easings, capacity);
+            elements = Arrays.copyOf(elements, capacity);
+            chains = Arrays.copyOf(chains, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+        }
+
+        int i = size++;
+        starts[i] = now;
+        durations[i] = element.getDurationNanos();
+        easings[i] = element.getEasing();
+        elements[i] = element;
+        chains[i] = chain;
+        tokens[i] = token;
+
+        if (!frame(element, chain, easings[i].getValue(0))) {
+            remove(i);
+        }
+    }
+
+    /**
+     * Runs a frame of every tween. Tweens that reach the end get a last frame with the final value,
+     * and their chains are handed to {@code resumed}.
+     *
+     * @param now Time of the current tick
+     * @param resumed Receives the chains whose tween completed
+     * @return Amount of frames run
+     */
+    int tick(long now, List<TaskChain> resumed) {
+        int frames = 0;
+        int i = 0;
+        while (i < size) {
+            TaskChain chain = chains[i];
+            if (!chain.isQueuedWith(tokens[i])) {
+                // Cancelled or restarted while tweening
+                remove(i);
+                continue;
+            }
+
+            double progress = (double) (now - starts[i]) / (double) durations[i];
+            boolean done = progress >= 1;
+            boolean ok = frame(elements[i], chain, easings[i].getValue(done ? 1 : progress));
+            frames++;
+
+            if (!ok) {
+                remove(i);
+            } else if (done) {
+                remove(i);
+                resumed.add(chain);
+            } else {
+                i++;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * @return {@code false} if the frame threw, and the chain was failed
+     */
+    private boolean frame(TimedFunctionElement element, TaskChain chain, double value) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (probe != null) {
+            probe.enter(chain, chain.getIndex(), element);
+        }
+        try {
+            element.accept(chain.getContext(), clamp(value));
+            return true;
+        } catch (RuntimeException | Error e) {
+            chain.fail(e);
+            if (failure == null) {
+                failure = e;
+            } else if (failure != e) {
+                failure.addSuppressed(e);
+            }
+            return false;
+        } finally {
+            if (probe != null) {
+                probe.exit();
+            }
+            if (metrics != null) {
+                metrics.onElement(ElementType.RUN_TIMED, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return The first error thrown by a frame since the last call, with the next ones suppressed, or {@code null}
+     */
+    Throwable takeFailure() {
+        Throwable failure = this.failure;
+        this.failure = null;
+        return failure;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void remove(int i) {
+        int last = --size;
+        starts[i] = starts[last];
+        durations[i] = durations[last];
+        easings[i] = easings[last];
+        elements[i] = elements[last];
+        chains[i] = chains[last];
+        tokens[i] = tokens[last];
+
+        easings[last] = null;
+        elements[last] = null;
+        chains[last] = null;
+    }
+
+    static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
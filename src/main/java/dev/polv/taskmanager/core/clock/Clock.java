@@ -0,0 +1,22 @@
+package dev.polv.taskmanager.core.clock;
+
+/**
+ * Monotonic time source of a {@link dev.polv.taskmanager.core.TaskManager}, in nanoseconds.
+ * <br><br>
+ * Values only make sense relative to each other, like {@link System#nanoTime()}.
+ * The manager reads it once per tick and every chain ticked in that tick sees the same time.
+ */
+@FunctionalInterface
+public interface Clock {
+
+    /**
+     * Backed by {@link System#nanoTime()}. Not affected by wall clock changes.
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return Current time in nanoseconds
+     */
+    long nanoTime();
+
+}
@@ -0,0 +1,43 @@
+package dev.polv.taskmanager.core.clock;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Clock} that only moves when told to. Lets tests and benchmarks advance time without sleeping.
+ */
+public class ManualClock implements Clock {
+
+    private final AtomicLong now;
+
+    public ManualClock() {
+        this(0L);
+    }
+
+    public ManualClock(long startNanos) {
+        this.now = new AtomicLong(startNanos);
+    }
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    /**
+     * @param time Time to move forward
+     */
+    public void advance(Duration time) {
+        advance(time.toNanos());
+    }
+
+    /**
+     * @param nanos Nanoseconds to move forward
+     */
+    public void advance(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Time can't go backwards");
+        }
+        now.addAndGet(nanos);
+    }
+
+}
@@ -7,7 +7,6 @@ import java.util.function.Consumer;
 public class FunctionElement extends TaskElement {
 
     private Consumer<Context> function;
-    private boolean running;
 
     public FunctionElement(Consumer<Context> function) {
         this(function, false);
@@ -19,22 +18,30 @@ public class FunctionElement extends TaskElement {
 
     public FunctionElement(Consumer<Context> function, boolean async, boolean await) {
         super(async ? (await ? ElementType.RUN_ASYNC_AWAIT : ElementType.RUN_ASYNC) : ElementType.RUN);
-        this.setFunction(function);
+        this.function = function;
     }
 
+    /**
+     * Runs the function. Elements keep no state of their own, so chains sharing them (copies, or chains spawned
+     * from a {@link dev.polv.taskmanager.core.ChainTemplate}) can run them at the same time.
+     */
     public void accept(Context context) {
-        if (this.running) return;
-
-        this.running = true;
         function.accept(context);
-        this.running = false;
     }
 
+    /**
+     * @throws IllegalStateException If the element belongs to a {@link dev.polv.taskmanager.core.ChainTemplate}
+     */
     public void setFunction(Consumer<Context> function) {
+        checkNotFrozen();
         this.function = function;
     }
 
+    /**
+     * @deprecated Elements are shared between chains and don't track their runs. Always {@code false}.
+     */
+    @Deprecated
     public boolean isRunning() {
-        return running;
+        return false;
     }
 }
@@ -0,0 +1,58 @@
+package dev.polv.taskmanager.core.elements;
+
+import dev.polv.taskmanager.core.Context;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runs several functions on the executor at once and waits for all of them, or for the first one, before continuing.
+ */
+public class ParallelElement extends TaskElement {
+
+    public enum Join {
+        /**
+         * Continues once every branch has returned.
+         */
+        ALL,
+        /**
+         * Continues once a branch returns without throwing, or once every branch threw. The other branches are cancelled.
+         */
+        ANY,
+    }
+
+    private final List<Function<Context, ?>> branches;
+    private final Join join;
+    private final String key;
+
+    /**
+     * @param branches Functions to run
+     * @param join When to continue
+     * @param key Key the results are saved under in the {@link Context}, or {@code null} to not save them
+     */
+    public ParallelElement(List<Function<Context, ?>> branches, Join join, String key) {
+        super(ElementType.RUN_PARALLEL);
+        if (branches.isEmpty()) {
+            throw new IllegalArgumentException("A parallel element needs at least one branch");
+        }
+        this.branches = List.copyOf(branches);
+        this.join = join;
+        this.key = key;
+    }
+
+    public int size() {
+        return branches.size();
+    }
+
+    public Function<Context, ?> getBranch(int i) {
+        return branches.get(i);
+    }
+
+    public Join getJoin() {
+        return join;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,70 @@
+package dev.polv.taskmanager.core.elements;
+
+import dev.polv.taskmanager.core.Context;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Parks the chain until a named signal is sent with {@code TaskManager.signal}, or a named latch is opened with
+ * {@code TaskManager.openLatch}. A parked chain isn't looked at again until then, or until its timeout.
+ */
+public class SignalElement extends TaskElement {
+
+    private final String name;
+    private final boolean latch;
+    private final String key;
+    private final Duration timeout;
+    private final Consumer<Context> onTimeout;
+
+    /**
+     * @param name Name of the signal or latch
+     * @param latch {@code true} to wait for a latch, which lets the chain through right away if it is already open
+     * @param key Key the payload is saved under in the {@link Context}, or {@code null} to not save it
+     * @param timeout Maximum time to wait, or {@code null} to wait forever
+     * @param onTimeout Function run when the timeout is reached, before the chain continues. Can be {@code null}.
+     */
+    public SignalElement(String name, boolean latch, String key, Duration timeout, Consumer<Context> onTimeout) {
+        super(ElementType.AWAIT_SIGNAL);
+        if (name == null) {
+            throw new IllegalArgumentException("Signal name can't be null");
+        }
+        if (timeout != null && timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout can't be negative");
+        }
+        this.name = name;
+        this.latch = latch;
+        this.key = key;
+        this.timeout = timeout;
+        this.onTimeout = onTimeout;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isLatch() {
+        return latch;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean hasTimeout() {
+        return timeout != null;
+    }
+
+    public long getTimeoutNanos() {
+        return timeout != null ? timeout.toNanos() : 0;
+    }
+
+    /**
+     * Runs the timeout branch, if there is one.
+     */
+    public void timedOut(Context context) {
+        if (onTimeout != null) {
+            onTimeout.accept(context);
+        }
+    }
+}
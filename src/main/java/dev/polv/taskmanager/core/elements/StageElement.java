@@ -0,0 +1,42 @@
+package dev.polv.taskmanager.core.elements;
+
+import dev.polv.taskmanager.core.Context;
+import dev.polv.taskmanager.core.ContextKey;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Starts non-blocking work on the tick thread and parks the chain until the {@link CompletionStage} it returns completes.
+ * No thread is held while waiting.
+ */
+public class StageElement extends TaskElement {
+
+    private final Function<Context, ? extends CompletionStage<?>> function;
+    private final String key;
+    private final ContextKey<?> typedKey;
+
+    /**
+     * @param function Function starting the work. It should return quickly, it runs on the tick thread.
+     * @param key Key the result is saved under in the {@link Context}, or {@code null}
+     * @param typedKey Typed key the result is saved under, or {@code null}
+     */
+    public StageElement(Function<Context, ? extends CompletionStage<?>> function, String key, ContextKey<?> typedKey) {
+        super(ElementType.AWAIT_STAGE);
+        this.function = function;
+        this.key = key;
+        this.typedKey = typedKey;
+    }
+
+    public CompletionStage<?> apply(Context context) {
+        return function.apply(context);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public ContextKey<?> getTypedKey() {
+        return typedKey;
+    }
+}
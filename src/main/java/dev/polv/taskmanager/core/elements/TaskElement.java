@@ -3,6 +3,7 @@ package dev.polv.taskmanager.core.elements;
 public class TaskElement {
 
     private ElementType type;
+    private volatile boolean frozen;
 
     public enum ElementType {
         WAIT,
@@ -10,6 +11,9 @@ public class TaskElement {
         RUN_ASYNC,
         RUN_TIMED,
         RUN_ASYNC_AWAIT,
+        RUN_PARALLEL,
+        AWAIT_SIGNAL,
+        AWAIT_STAGE,
     }
 
     protected TaskElement(ElementType type) {
@@ -20,6 +24,27 @@ public class TaskElement {
         return type;
     }
 
+    /**
+     * Makes the element read-only. Called when a {@link dev.polv.taskmanager.core.ChainTemplate} is compiled,
+     * since every chain it spawns shares the element.
+     */
+    public void freeze() {
+        this.frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * @throws IllegalStateException If the element was frozen by a template
+     */
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Element is shared by a ChainTemplate and can't be changed");
+        }
+    }
+
     public void cancel() {
     }
 }
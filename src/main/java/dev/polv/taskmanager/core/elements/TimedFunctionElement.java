@@ -1,17 +1,19 @@
 package dev.polv.taskmanager.core.elements;
 
 import dev.polv.taskmanager.core.Context;
+import dev.polv.taskmanager.core.clock.Clock;
 import dev.polv.taskmanager.utils.math.Easing;
 
 import java.time.Duration;
 import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
 
 public class TimedFunctionElement extends TaskElement {
-    private BiConsumer<Context, Double> function;
+    private ObjDoubleConsumer<Context> function;
 
     private Easing easing;
-    private Long duration;
-    private Long startTime = 0L;
+    private long duration;
+    private long startTime = 0L;
 
     private boolean running = false;
 
@@ -21,49 +23,143 @@ public class TimedFunctionElement extends TaskElement {
     }
 
     public TimedFunctionElement(BiConsumer<Context, Double> function, Duration duration, Easing easing) {
+        this(function::accept, duration.toNanos(), easing);
+    }
+
+    private TimedFunctionElement(ObjDoubleConsumer<Context> function, long duration, Easing easing) {
         super(ElementType.RUN_TIMED);
         this.function = function;
-        this.duration = duration.toMillis();
+        this.duration = duration;
         this.easing = easing;
 
         this.running = false;
     }
 
+    /**
+     * Creates an element whose function takes the progress as a primitive {@code double}, so no value is boxed per frame.
+     *
+     * @param function Function to run, receiving the {@link Context} and the eased progress
+     * @param duration Duration of the function
+     * @param easing {@link Easing} applied to the progress
+     * @return new {@link TimedFunctionElement}
+     */
+    public static TimedFunctionElement of(ObjDoubleConsumer<Context> function, Duration duration, Easing easing) {
+        return new TimedFunctionElement(function, duration.toNanos(), easing);
+    }
+
+    /**
+     * @throws IllegalStateException If the element belongs to a {@link dev.polv.taskmanager.core.ChainTemplate}
+     * @deprecated Reads {@link Clock#SYSTEM}, which may not be the manager's clock. Use {@link #start(long)}.
+     */
+    @Deprecated
     public void start() {
-        this.startTime = System.currentTimeMillis();
-        this.running = true;
+        start(Clock.SYSTEM.nanoTime());
     }
 
-    private boolean isDone() {
-        return System.currentTimeMillis() - startTime >= duration;
+    /**
+     * @param now Current time of the manager's clock, in nanoseconds
+     * @throws IllegalStateException If the element belongs to a {@link dev.polv.taskmanager.core.ChainTemplate}
+     * @deprecated Keeps the start in the element, which is shared by every chain running it. Use {@link #getValue(long, long)}.
+     */
+    @Deprecated
+    public void start(long now) {
+        checkNotFrozen();
+        this.startTime = now;
+        this.running = true;
     }
 
+    /**
+     * @deprecated Only tracks {@link #start(long)}, see there.
+     */
+    @Deprecated
     public boolean isRunning() {
         return running;
     }
 
     /**
-     *
      * @return The progress of the function, between 0 and 1
+     * @deprecated Reads {@link Clock#SYSTEM}, which may not be the manager's clock. Use {@link #getProgress(long)}.
      */
+    @Deprecated
     public double getProgress() {
-        return (double) (System.currentTimeMillis() - startTime) / (double) duration;
+        return getProgress(Clock.SYSTEM.nanoTime());
     }
 
+    /**
+     *
+     * @param now Current time of the manager's clock, in nanoseconds
+     * @return The progress of the function, between 0 and 1
+     * @deprecated Uses the start saved by {@link #start(long)}. Use {@link #getProgress(long, long)}.
+     */
+    @Deprecated
+    public double getProgress(long now) {
+        return getProgress(startTime, now);
+    }
+
+    /**
+     * @return The eased progress of the function
+     * @deprecated Reads {@link Clock#SYSTEM}, which may not be the manager's clock. Use {@link #getValue(long)}.
+     */
+    @Deprecated
     public double getValue() {
-        double v = easing.getValue(getProgress());
+        return getValue(Clock.SYSTEM.nanoTime());
+    }
+
+    /**
+     * @param now Current time of the manager's clock, in nanoseconds
+     * @return The eased progress of the function
+     * @deprecated Uses the start saved by {@link #start(long)}. Use {@link #getValue(long, long)}.
+     */
+    @Deprecated
+    public double getValue(long now) {
+        double v = getValue(startTime, now);
         if (v >= 1) {
             this.running = false;
         }
-        return Math.max(1, Math.min(0, v));
+        return v;
+    }
+
+    /**
+     * @param startTime Time the run started, in nanoseconds of the manager's clock
+     * @param now Current time of the manager's clock, in nanoseconds
+     * @return The progress of the run, between 0 and 1
+     */
+    public double getProgress(long startTime, long now) {
+        return (double) (now - startTime) / (double) duration;
+    }
+
+    /**
+     * @param startTime Time the run started, in nanoseconds of the manager's clock
+     * @param now Current time of the manager's clock, in nanoseconds
+     * @return The eased progress of the run, clamped between 0 and 1
+     */
+    public double getValue(long startTime, long now) {
+        double v = easing.getValue(getProgress(startTime, now));
+        return Math.max(0, Math.min(1, v));
+    }
+
+    public Easing getEasing() {
+        return easing;
+    }
+
+    public long getDurationNanos() {
+        return duration;
+    }
+
+    public void accept(Context context, double value) {
+        function.accept(context, value);
     }
 
     public BiConsumer<Context, Double> getFunction() {
-        return function;
+        return function::accept;
     }
 
+    /**
+     * @throws IllegalStateException If the element belongs to a {@link dev.polv.taskmanager.core.ChainTemplate}
+     */
     public void setFunction(BiConsumer<Context, Double> function) {
-        this.function = function;
+        checkNotFrozen();
+        this.function = function::accept;
     }
 
 }
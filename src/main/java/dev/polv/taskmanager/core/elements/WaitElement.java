@@ -15,11 +15,19 @@ public class WaitElement extends TaskElement {
         return this.duration.toMillis();
     }
 
+    public long getNanos() {
+        return this.duration.toNanos();
+    }
+
     public Duration getDuration() {
         return duration;
     }
 
+    /**
+     * @throws IllegalStateException If the element belongs to a {@link dev.polv.taskmanager.core.ChainTemplate}
+     */
     public void setTime(Duration duration) {
+        checkNotFrozen();
         this.duration = duration;
     }
 
@@ -0,0 +1,302 @@
+package dev.polv.taskmanager.core.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key-value journal stored in memory-mapped segment files.
+ * <br><br>
+ * Every {@link #put(String, byte[])} and {@link #remove(String)} is appended to the current segment as a record.
+ * Appending is a copy into the mapped file and never calls into the OS, so records survive a crash of the process
+ * as soon as they are written. They are forced to disk when a segment fills up, when the journal is compacted and when it is closed.
+ * <br><br>
+ * Once the records written exceed a few times the size of the live values, the journal is compacted: the live values are written
+ * to a new segment, which is moved into place atomically, and the older segments are deleted. The last value of every key is
+ * kept in memory for that.
+ * <br><br>
+ * Record layout: {@code int length, int crc32, byte type, utf name, bytes value}. The header is written last, so a record that
+ * was only partly written reads as the end of the segment. Not thread-safe.
+ */
+public class Journal implements AutoCloseable {
+
+    private static final String EXTENSION = ".journal";
+    private static final String COMPACTING_EXTENSION = ".compacting";
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int MIN_COMPACTION_BYTES = 1 << 20;
+    private static final int COMPACTION_RATIO = 4;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    /**
+     * First record of a compacted segment: every record before it is obsolete.
+     */
+    private static final byte CLEAR = 3;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Map<String, byte[]> live;
+    private final CRC32 crc;
+
+    private long sequence;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long liveBytes;
+    private long writtenBytes;
+
+    private Journal(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.live = new HashMap<>();
+        this.crc = new CRC32();
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and replays its segments.
+     *
+     * @param directory Directory holding the segments
+     * @param segmentSize Size of each segment file, in bytes
+     * @return The opened {@link Journal}
+     * @throws IOException If the directory can't be read or written
+     */
+    public static Journal open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size is too small");
+        }
+
+        Files.createDirectories(directory);
+        Journal journal = new Journal(directory, segmentSize);
+        journal.replay();
+        // Starts from a single compacted segment, which also drops whatever was torn at the end of the last run
+        journal.compact();
+        return journal;
+    }
+
+    /**
+     * @return The last value of every key, as of now
+     */
+    public Map<String, byte[]> getValues() {
+        return Collections.unmodifiableMap(live);
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        byte[] previous = live.put(key, value);
+        liveBytes += value.length - (previous != null ? previous.length : 0);
+        append(PUT, key, value);
+    }
+
+    public void remove(String key) throws IOException {
+        byte[] previous = live.remove(key);
+        if (previous == null) return;
+
+        liveBytes -= previous.length;
+        append(REMOVE, key, null);
+    }
+
+    /**
+     * Forces the current segment to disk.
+     */
+    public void sync() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        segment = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void append(byte type, String key, byte[] value) throws IOException {
+        byte[] name = key.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Integer.BYTES + name.length + (value != null ? value.length : 0);
+        if (segment.remaining() < HEADER_BYTES + length) {
+            roll(HEADER_BYTES + length);
+        }
+
+        int start = segment.position();
+        write(segment, type, name, value, length);
+        writtenBytes += segment.position() - start;
+
+        if (writtenBytes > MIN_COMPACTION_BYTES && writtenBytes > liveBytes * COMPACTION_RATIO) {
+            compact();
+        }
+    }
+
+    private void write(ByteBuffer buffer, byte type, byte[] name, byte[] value, int length) {
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        buffer.put(type);
+        buffer.putInt(name.length);
+        buffer.put(name);
+        if (value != null) {
+            buffer.put(value);
+        }
+        int end = buffer.position();
+
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + HEADER_BYTES).limit(end));
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(start, length);
+    }
+
+    /**
+     * Closes the current segment and maps the next one.
+     *
+     * @param minimumSize Bytes the new segment must fit
+     */
+    private void roll(int minimumSize) throws IOException {
+        close();
+        sequence++;
+        map(segmentPath(sequence), 0, minimumSize);
+    }
+
+    private void map(Path path, int position, int minimumSize) throws IOException {
+        // Keeps room for the zeroed length that ends the segment
+        int size = Math.max(segmentSize, position + minimumSize + Integer.BYTES);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment.position(position);
+    }
+
+    /**
+     * Rewrites the live values to a new segment, then deletes every older one.
+     */
+    private void compact() throws IOException {
+        close();
+        List<Path> obsolete = listSegments();
+
+        int size = HEADER_BYTES + 1 + Integer.BYTES;
+        for (Map.Entry<String, byte[]> entry : live.entrySet()) {
+            size += HEADER_BYTES + 1 + Integer.BYTES + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        write(buffer, CLEAR, new byte[0], null, 1 + Integer.BYTES);
+        for (Map.Entry<String, byte[]> entry : live.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            write(buffer, PUT, name, entry.getValue(), 1 + Integer.BYTES + name.length + entry.getValue().length);
+        }
+        buffer.flip();
+
+        sequence++;
+        Path target = segmentPath(sequence);
+        Path temporary = directory.resolve(target.getFileName() + COMPACTING_EXTENSION);
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        // Only a complete compacted segment is ever visible, so its CLEAR can't drop records that weren't rewritten
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Path path : obsolete) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // Still mapped on some platforms. It is older than the CLEAR record, so replaying it is harmless
+            }
+        }
+
+        map(target, size, 0);
+        writtenBytes = size;
+    }
+
+    private void replay() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            // Left by a compaction that didn't finish, the segments it was rewriting are all still there
+            for (Path path : (Iterable<Path>) files.filter(path -> path.getFileName().toString().endsWith(COMPACTING_EXTENSION))::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        for (Path path : listSegments()) {
+            sequence = Math.max(sequence, sequenceOf(path));
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (readRecord(buffer)) {
+                // Keeps reading until the end of the written records
+            }
+        }
+        liveBytes = 0;
+        for (byte[] value : live.values()) {
+            liveBytes += value.length;
+        }
+    }
+
+    /**
+     * @return {@code false} at the end of the records, or at a torn or corrupted one
+     */
+    private boolean readRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) return false;
+
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        int checksum = buffer.getInt(start + Integer.BYTES);
+        if (length < 1 + Integer.BYTES || length > buffer.remaining() - HEADER_BYTES) return false;
+
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + HEADER_BYTES).limit(start + HEADER_BYTES + length));
+        if ((int) crc.getValue() != checksum) return false;
+
+        buffer.position(start + HEADER_BYTES);
+        byte type = buffer.get();
+        int nameLength = buffer.getInt();
+        if (nameLength < 0 || nameLength > length - 1 - Integer.BYTES) return false;
+        byte[] name = new byte[nameLength];
+        buffer.get(name);
+        byte[] value = new byte[length - 1 - Integer.BYTES - nameLength];
+        buffer.get(value);
+
+        String key = new String(name, StandardCharsets.UTF_8);
+        switch (type) {
+            case PUT -> live.put(key, value);
+            case REMOVE -> live.remove(key);
+            case CLEAR -> live.clear();
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().endsWith(EXTENSION) && sequenceOf(path) >= 0).forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+        return segments;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%016x", sequence) + EXTENSION);
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
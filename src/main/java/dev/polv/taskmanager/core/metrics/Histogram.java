@@ -0,0 +1,77 @@
+package dev.polv.taskmanager.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative longs, in the style of HdrHistogram.
+ * <br><br>
+ * Values are counted in buckets that double in size, each split in 16 linear sub-buckets,
+ * so any value is kept with a relative error under 1/16 using a fixed array of counters.
+ * Recording is a couple of atomic increments and never allocates. Negative values are recorded as 0.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+    static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Copies the counters. Values recorded while copying may or may not be included.
+     *
+     * @return new {@link HistogramSnapshot}
+     */
+    public HistogramSnapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(copy, count.get(), sum.get(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) ((value >>> shift) - HALF_SUB_BUCKETS);
+    }
+
+    /**
+     * @return The highest value counted in the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long mantissa = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        long next = (mantissa + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+}
@@ -0,0 +1,66 @@
+package dev.polv.taskmanager.core.metrics;
+
+/**
+ * Immutable copy of a {@link Histogram}.
+ */
+public class HistogramSnapshot {
+
+    static final HistogramSnapshot EMPTY = new HistogramSnapshot(new long[Histogram.BUCKETS], 0, 0, 0);
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return The highest value of the bucket holding the percentile, never above {@link #getMax()}. {@code 0} if empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(Histogram.highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + " mean=" + (long) getMean() + " p50=" + getValueAtPercentile(50)
+                + " p99=" + getValueAtPercentile(99) + " max=" + max;
+    }
+
+}
@@ -0,0 +1,112 @@
+package dev.polv.taskmanager.core.metrics;
+
+import dev.polv.taskmanager.core.elements.TaskElement.ElementType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of what a {@link TaskMetrics} recorded. Times are in nanoseconds.
+ */
+public class MetricsSnapshot {
+
+    public static final MetricsSnapshot EMPTY = new MetricsSnapshot(HistogramSnapshot.EMPTY, new EnumMap<>(ElementType.class),
+            HistogramSnapshot.EMPTY, HistogramSnapshot.EMPTY, 0, 0, 0, 0, 0, 0, 0);
+
+    private final HistogramSnapshot tickDuration;
+    private final Map<ElementType, HistogramSnapshot> elementDuration;
+    private final HistogramSnapshot asyncWait;
+    private final HistogramSnapshot lateness;
+    private final long asyncSubmitted;
+    private final long asyncStarted;
+    private final long asyncLimited;
+    private final long asyncDropped;
+    private final long chainsStarted;
+    private final long chainsFinished;
+    private final long chainsCancelled;
+
+    public MetricsSnapshot(HistogramSnapshot tickDuration, EnumMap<ElementType, HistogramSnapshot> elementDuration,
+                           HistogramSnapshot asyncWait, HistogramSnapshot lateness,
+                           long asyncSubmitted, long asyncStarted, long asyncLimited, long asyncDropped,
+                           long chainsStarted, long chainsFinished, long chainsCancelled) {
+        this.tickDuration = tickDuration;
+        this.elementDuration = Collections.unmodifiableMap(elementDuration);
+        this.asyncWait = asyncWait;
+        this.lateness = lateness;
+        this.asyncSubmitted = asyncSubmitted;
+        this.asyncStarted = asyncStarted;
+        this.asyncLimited = asyncLimited;
+        this.asyncDropped = asyncDropped;
+        this.chainsStarted = chainsStarted;
+        this.chainsFinished = chainsFinished;
+        this.chainsCancelled = chainsCancelled;
+    }
+
+    public HistogramSnapshot getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * @param type Type of element
+     * @return Execution times of the elements of that type
+     */
+    public HistogramSnapshot getElementDuration(ElementType type) {
+        return elementDuration.getOrDefault(type, HistogramSnapshot.EMPTY);
+    }
+
+    /**
+     * @return Time async elements spent in the executor's queue
+     */
+    public HistogramSnapshot getAsyncWait() {
+        return asyncWait;
+    }
+
+    /**
+     * @return Time between the moment elements were due and the tick that ran them
+     */
+    public HistogramSnapshot getLateness() {
+        return lateness;
+    }
+
+    /**
+     * @return Amount of async elements submitted but not yet picked up by the executor
+     */
+    public long getAsyncQueued() {
+        return Math.max(0, asyncSubmitted - asyncStarted);
+    }
+
+    /**
+     * @return Amount of times an async element was turned down by an {@link dev.polv.taskmanager.core.AsyncLimit}
+     */
+    public long getAsyncLimited() {
+        return asyncLimited;
+    }
+
+    /**
+     * @return Amount of async elements skipped by a limit
+     */
+    public long getAsyncDropped() {
+        return asyncDropped;
+    }
+
+    public long getChainsStarted() {
+        return chainsStarted;
+    }
+
+    public long getChainsFinished() {
+        return chainsFinished;
+    }
+
+    public long getChainsCancelled() {
+        return chainsCancelled;
+    }
+
+    /**
+     * @return Amount of chains started that haven't finished or been cancelled yet, waiting or running
+     */
+    public long getChainsActive() {
+        return Math.max(0, chainsStarted - chainsFinished - chainsCancelled);
+    }
+
+}
@@ -0,0 +1,94 @@
+package dev.polv.taskmanager.core.metrics;
+
+import dev.polv.taskmanager.core.AsyncLimit;
+import dev.polv.taskmanager.core.elements.TaskElement.ElementType;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TaskMetrics} keeping everything in lock-free {@link Histogram}s and counters since it was created.
+ */
+public class RecordingMetrics implements TaskMetrics {
+
+    private static final ElementType[] TYPES = ElementType.values();
+
+    private final Histogram tickDuration = new Histogram();
+    private final Histogram[] elementDuration = new Histogram[TYPES.length];
+    private final Histogram asyncWait = new Histogram();
+    private final Histogram lateness = new Histogram();
+    private final LongAdder asyncSubmitted = new LongAdder();
+    private final LongAdder asyncStarted = new LongAdder();
+    private final LongAdder asyncLimited = new LongAdder();
+    private final LongAdder asyncDropped = new LongAdder();
+    private final LongAdder chainsStarted = new LongAdder();
+    private final LongAdder chainsFinished = new LongAdder();
+    private final LongAdder chainsCancelled = new LongAdder();
+
+    public RecordingMetrics() {
+        for (int i = 0; i < elementDuration.length; i++) {
+            elementDuration[i] = new Histogram();
+        }
+    }
+
+    @Override
+    public void onTick(long durationNanos, int executed, int deferred) {
+        tickDuration.record(durationNanos);
+    }
+
+    @Override
+    public void onElement(ElementType type, long durationNanos) {
+        elementDuration[type.ordinal()].record(durationNanos);
+    }
+
+    @Override
+    public void onAsyncSubmitted() {
+        asyncSubmitted.increment();
+    }
+
+    @Override
+    public void onAsyncStarted(long waitNanos) {
+        asyncStarted.increment();
+        asyncWait.record(waitNanos);
+    }
+
+    @Override
+    public void onAsyncLimited(AsyncLimit.Policy policy) {
+        asyncLimited.increment();
+        if (policy == AsyncLimit.Policy.DROP) {
+            asyncDropped.increment();
+        }
+    }
+
+    @Override
+    public void onLateness(long latenessNanos) {
+        lateness.record(latenessNanos);
+    }
+
+    @Override
+    public void onChainStarted() {
+        chainsStarted.increment();
+    }
+
+    @Override
+    public void onChainFinished() {
+        chainsFinished.increment();
+    }
+
+    @Override
+    public void onChainCancelled() {
+        chainsCancelled.increment();
+    }
+
+    @Override
+    public MetricsSnapshot snapshot() {
+        EnumMap<ElementType, HistogramSnapshot> elements = new EnumMap<>(ElementType.class);
+        for (ElementType type : TYPES) {
+            elements.put(type, elementDuration[type.ordinal()].snapshot());
+        }
+        return new MetricsSnapshot(tickDuration.snapshot(), elements, asyncWait.snapshot(), lateness.snapshot(),
+                asyncSubmitted.sum(), asyncStarted.sum(), asyncLimited.sum(), asyncDropped.sum(),
+                chainsStarted.sum(), chainsFinished.sum(), chainsCancelled.sum());
+    }
+
+}
@@ -0,0 +1,91 @@
+package dev.polv.taskmanager.core.metrics;
+
+import dev.polv.taskmanager.core.AsyncLimit;
+import dev.polv.taskmanager.core.TaskManager;
+import dev.polv.taskmanager.core.elements.TaskElement.ElementType;
+
+/**
+ * Receives what a {@link TaskManager} is doing. Set with {@link TaskManager.Builder#metrics(TaskMetrics)}.
+ * <br><br>
+ * Every method may be called from the tick thread, a shard or an executor thread at the same time, so implementations
+ * must be thread-safe and should never block. Times are in nanoseconds of {@link System#nanoTime()}, except lateness,
+ * which is measured with the manager's {@link dev.polv.taskmanager.core.clock.Clock}.
+ * <br><br>
+ * With {@link #NOOP}, the default, the manager doesn't even read the time for them.
+ */
+public interface TaskMetrics {
+
+    /**
+     * Records nothing.
+     */
+    TaskMetrics NOOP = new TaskMetrics() {
+    };
+
+    /**
+     * @param durationNanos Time spent in a tick
+     * @param executed Amount of elements executed
+     * @param deferred Amount of due chains left for the next tick
+     */
+    default void onTick(long durationNanos, int executed, int deferred) {
+    }
+
+    /**
+     * Called after an element ran. Async elements are measured on the thread running them, and timed elements once per frame.
+     *
+     * @param type Type of the element
+     * @param durationNanos Time spent running it
+     */
+    default void onElement(ElementType type, long durationNanos) {
+    }
+
+    /**
+     * Called when an async element is handed to the executor.
+     */
+    default void onAsyncSubmitted() {
+    }
+
+    /**
+     * Called when an executor thread picks up an async element.
+     *
+     * @param waitNanos Time the element spent in the executor's queue
+     */
+    default void onAsyncStarted(long waitNanos) {
+    }
+
+    /**
+     * Called when an async element is turned down by an {@link AsyncLimit}.
+     *
+     * @param policy What happened to the element
+     */
+    default void onAsyncLimited(AsyncLimit.Policy policy) {
+    }
+
+    /**
+     * @param latenessNanos Time between the moment an element was due and the tick that ran it
+     */
+    default void onLateness(long latenessNanos) {
+    }
+
+    default void onChainStarted() {
+    }
+
+    /**
+     * Called when a chain runs past its last element.
+     */
+    default void onChainFinished() {
+    }
+
+    /**
+     * Called when a running chain is cancelled before its last element.
+     */
+    default void onChainCancelled() {
+    }
+
+    /**
+     * @return What was recorded so far, or {@link MetricsSnapshot#EMPTY} if the implementation doesn't keep anything
+     */
+    default MetricsSnapshot snapshot() {
+        return MetricsSnapshot.EMPTY;
+    }
+
+}
@@ -0,0 +1,43 @@
+package dev.polv.taskmanager.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ExecutorUtils {
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadFactory();
+
+    private static Method findVirtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code true} if the running JVM supports virtual threads (JDK 21+)
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * On JVMs without virtual threads it falls back to {@link Executors#newCachedThreadPool()}.
+     *
+     * @return new {@link ExecutorService}
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException ignored) {
+                // Preview-gated or restricted at runtime, use platform threads instead
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+}
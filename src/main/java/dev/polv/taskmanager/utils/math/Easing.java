@@ -1,86 +1,146 @@
 package dev.polv.taskmanager.utils.math;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 
 public class Easing {
 
-    private Function<Double, Double> callable;
-    private int id;
+    public static final int DEFAULT_LOOKUP_RESOLUTION = 256;
 
-    // Extracted from https://easings.net/
-
-    public static Easing EASE_IN_SINE = new Easing(t -> 1 - Math.cos((t * Math.PI) / 2), 0);
-    public static Easing EASE_OUT_SINE = new Easing(t -> Math.sin((t * Math.PI) / 2), 1);
-    public static Easing EASE_INOUT_SINE = new Easing(t -> -(Math.cos(Math.PI * t) - 1) / 2, 2);
-
-    public static Easing EASE_IN_QUAD = new Easing(t -> t*t, 3);
-    public static Easing EASE_OUT_QUAD = new Easing(t -> 1 - (1 - t) * (1 - t), 4);
-    public static Easing EASE_INOUT_QUAD = new Easing(t -> t < 0.5 ? 2 * t * t : 1 - Math.pow(-2 * t + 2, 2) / 2, 5);
-
-    public static Easing EASE_IN_CUBIC = new Easing(t -> t*t*t, 6);
-    public static Easing EASE_OUT_CUBIC = new Easing(t -> 1 - Math.pow(1 - t, 3), 7);
-    public static Easing EASE_INOUT_CUBIC = new Easing(t -> t < 0.5 ? 4 * t * t * t : 1 - Math.pow(-2 * t + 2, 3) / 2, 8);
-
-    public static Easing EASE_IN_QUART = new Easing(t -> t*t*t*t, 9);
-    public static Easing EASE_OUT_QUART = new Easing(t -> 1 - Math.pow(1 - t, 4), 10);
-    public static Easing EASE_INOUT_QUART = new Easing(t -> t < 0.5 ? 8 * t * t * t * t : 1 - Math.pow(-2 * t + 2, 4) / 2, 11);
-
-    public static Easing EASE_IN_QUINT = new Easing(t -> t*t*t*t*t, 12);
-    public static Easing EASE_OUT_QUINT = new Easing(t -> 1 - Math.pow(1 - t, 5), 13);
-    public static Easing EASE_INOUT_QUINT = new Easing(t -> t < 0.5 ? 16 * t * t * t * t * t : 1 - Math.pow(-2 * t + 2, 5) / 2, 14);
-
-    public static Easing EASE_IN_EXPO = new Easing(t -> Math.pow(2, 10 * (t - 1)), 15);
-    public static Easing EASE_OUT_EXPO = new Easing(t -> 1 - Math.pow(2, -10 * t), 16);
-    public static Easing EASE_INOUT_EXPO = new Easing(t -> t < 0.5 ? Math.pow(2, 20 * t - 10) / 2 : 1 - Math.pow(2, -20 * t + 10) / 2, 17);
+    private final DoubleUnaryOperator callable;
+    private final int id;
+    private final double[] table;
 
-    public static Easing EASE_IN_CIRC = new Easing(t -> 1 - Math.sqrt(1 - t * t), 18);
-    public static Easing EASE_OUT_CIRC = new Easing(t -> Math.sqrt(1 - (t - 1) * (t - 1)), 19);
-    public static Easing EASE_INOUT_CIRC = new Easing(t -> t < 0.5 ? (1 - Math.sqrt(1 - 2 * t * t)) / 2 : (Math.sqrt(1 - 2 * (t - 1) * (t - 1)) + 1) / 2, 20);
-
-    public static Easing LINEAR = new Easing(t -> t, 21);
-    public static Easing INSTANT = new Easing(t -> t == 1.0d ? 1d : 0d, 21);
-
-    public static HashMap<String, Easing> getValues() {
-        HashMap<String, Easing> values = new HashMap<>();
-
-        values.put("EASE_IN_SINE", EASE_IN_SINE);
-        values.put("EASE_OUT_SINE", EASE_OUT_SINE);
-        values.put("EASE_INOUT_SINE", EASE_INOUT_SINE);
+    // Extracted from https://easings.net/
 
-        values.put("EASE_IN_QUAD", EASE_IN_QUAD);
-        values.put("EASE_OUT_QUAD", EASE_OUT_QUAD);
-        values.put("EASE_INOUT_QUAD", EASE_INOUT_QUAD);
+    public static final Easing EASE_IN_SINE = of(t -> 1 - Math.cos((t * Math.PI) / 2), 0);
+    public static final Easing EASE_OUT_SINE = of(t -> Math.sin((t * Math.PI) / 2), 1);
+    public static final Easing EASE_INOUT_SINE = of(t -> -(Math.cos(Math.PI * t) - 1) / 2, 2);
+
+    public static final Easing EASE_IN_QUAD = of(t -> t*t, 3);
+    public static final Easing EASE_OUT_QUAD = of(t -> 1 - (1 - t) * (1 - t), 4);
+    public static final Easing EASE_INOUT_QUAD = of(t -> t < 0.5 ? 2 * t * t : 1 - Math.pow(-2 * t + 2, 2) / 2, 5);
+
+    public static final Easing EASE_IN_CUBIC = of(t -> t*t*t, 6);
+    public static final Easing EASE_OUT_CUBIC = of(t -> 1 - Math.pow(1 - t, 3), 7);
+    public static final Easing EASE_INOUT_CUBIC = of(t -> t < 0.5 ? 4 * t * t * t : 1 - Math.pow(-2 * t + 2, 3) / 2, 8);
+
+    public static final Easing EASE_IN_QUART = of(t -> t*t*t*t, 9);
+    public static final Easing EASE_OUT_QUART = of(t -> 1 - Math.pow(1 - t, 4), 10);
+    public static final Easing EASE_INOUT_QUART = of(t -> t < 0.5 ? 8 * t * t * t * t : 1 - Math.pow(-2 * t + 2, 4) / 2, 11);
+
+    public static final Easing EASE_IN_QUINT = of(t -> t*t*t*t*t, 12);
+    public static final Easing EASE_OUT_QUINT = of(t -> 1 - Math.pow(1 - t, 5), 13);
+    public static final Easing EASE_INOUT_QUINT = of(t -> t < 0.5 ? 16 * t * t * t * t * t : 1 - Math.pow(-2 * t + 2, 5) / 2, 14);
+
+    public static final Easing EASE_IN_EXPO = of(t -> Math.pow(2, 10 * (t - 1)), 15);
+    public static final Easing EASE_OUT_EXPO = of(t -> 1 - Math.pow(2, -10 * t), 16);
+    public static final Easing EASE_INOUT_EXPO = of(t -> t < 0.5 ? Math.pow(2, 20 * t - 10) / 2 : 1 - Math.pow(2, -20 * t + 10) / 2, 17);
+
+    public static final Easing EASE_IN_CIRC = of(t -> 1 - Math.sqrt(1 - t * t), 18);
+    public static final Easing EASE_OUT_CIRC = of(t -> Math.sqrt(1 - (t - 1) * (t - 1)), 19);
+    public static final Easing EASE_INOUT_CIRC = of(t -> t < 0.5 ? (1 - Math.sqrt(1 - 4 * t * t)) / 2 : (Math.sqrt(1 - 4 * (t - 1) * (t - 1)) + 1) / 2, 20);
+
+    public static final Easing LINEAR = of(t -> t, 21);
+    public static final Easing INSTANT = of(t -> t == 1.0d ? 1d : 0d, 22);
+
+    private static final Easing[] BY_ID = {
+            EASE_IN_SINE, EASE_OUT_SINE, EASE_INOUT_SINE,
+            EASE_IN_QUAD, EASE_OUT_QUAD, EASE_INOUT_QUAD,
+            EASE_IN_CUBIC, EASE_OUT_CUBIC, EASE_INOUT_CUBIC,
+            EASE_IN_QUART, EASE_OUT_QUART, EASE_INOUT_QUART,
+            EASE_IN_QUINT, EASE_OUT_QUINT, EASE_INOUT_QUINT,
+            EASE_IN_EXPO, EASE_OUT_EXPO, EASE_INOUT_EXPO,
+            EASE_IN_CIRC, EASE_OUT_CIRC, EASE_INOUT_CIRC,
+            LINEAR, INSTANT,
+    };
+
+    private static final String[] NAMES = {
+            "EASE_IN_SINE", "EASE_OUT_SINE", "EASE_INOUT_SINE",
+            "EASE_IN_QUAD", "EASE_OUT_QUAD", "EASE_INOUT_QUAD",
+            "EASE_IN_CUBIC", "EASE_OUT_CUBIC", "EASE_INOUT_CUBIC",
+            "EASE_IN_QUART", "EASE_OUT_QUART", "EASE_INOUT_QUART",
+            "EASE_IN_QUINT", "EASE_OUT_QUINT", "EASE_INOUT_QUINT",
+            "EASE_IN_EXPO", "EASE_OUT_EXPO", "EASE_INOUT_EXPO",
+            "EASE_IN_CIRC", "EASE_OUT_CIRC", "EASE_INOUT_CIRC",
+            "LINEAR", "INSTANT",
+    };
+
+    private static final Map<String, Easing> VALUES = createValues();
+
+    private static Map<String, Easing> createValues() {
+        Map<String, Easing> values = new LinkedHashMap<>();
+        for (int i = 0; i < BY_ID.length; i++) {
+            values.put(NAMES[i], BY_ID[i]);
+        }
+        return Collections.unmodifiableMap(values);
+    }
 
-        values.put("EASE_IN_CUBIC", EASE_IN_CUBIC);
-        values.put("EASE_OUT_CUBIC", EASE_OUT_CUBIC);
-        values.put("EASE_INOUT_CUBIC", EASE_INOUT_CUBIC);
+    /**
+     * @return Every built-in easing by name. The map is shared and can't be modified.
+     */
+    public static Map<String, Easing> getValues() {
+        return VALUES;
+    }
 
-        values.put("EASE_IN_QUART", EASE_IN_QUART);
-        values.put("EASE_OUT_QUART", EASE_OUT_QUART);
-        values.put("EASE_INOUT_QUART", EASE_INOUT_QUART);
+    public Easing(Function<Double, Double> callable, int id) {
+        this((DoubleUnaryOperator) callable::apply, id, null);
+    }
 
-        values.put("EASE_IN_QUINT", EASE_IN_QUINT);
-        values.put("EASE_OUT_QUINT", EASE_OUT_QUINT);
-        values.put("EASE_INOUT_QUINT", EASE_INOUT_QUINT);
+    private Easing(DoubleUnaryOperator callable, int id, double[] table) {
+        this.id = id;
+        this.callable = callable;
+        this.table = table;
+    }
 
-        values.put("EASE_IN_EXPO", EASE_IN_EXPO);
-        values.put("EASE_OUT_EXPO", EASE_OUT_EXPO);
-        values.put("EASE_INOUT_EXPO", EASE_INOUT_EXPO);
+    /**
+     * Creates an easing from a primitive curve, so evaluating it never boxes.
+     *
+     * @param callable The curve, taking and returning values between 0 and 1
+     * @param id Id of the easing
+     * @return new {@link Easing}
+     */
+    public static Easing of(DoubleUnaryOperator callable, int id) {
+        return new Easing(callable, id, null);
+    }
 
-        values.put("EASE_IN_CIRC", EASE_IN_CIRC);
-        values.put("EASE_OUT_CIRC", EASE_OUT_CIRC);
-        values.put("EASE_INOUT_CIRC", EASE_INOUT_CIRC);
+    /**
+     * Creates a copy of this easing backed by a precomputed table, evaluated with linear interpolation.
+     * Trades a little precision for never calling {@code Math.pow}, {@code Math.cos} and similar per frame.
+     * Curves with jumps, like {@link #INSTANT}, get smoothed between samples. The copy keeps the same id.
+     *
+     * @param resolution Amount of intervals the curve is sampled in
+     * @return new {@link Easing}
+     */
+    public Easing withLookupTable(int resolution) {
+        if (resolution < 1) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
 
-        values.put("LINEAR", LINEAR);
-        values.put("INSTANT", INSTANT);
+        double[] table = new double[resolution + 1];
+        for (int i = 0; i <= resolution; i++) {
+            table[i] = getValue((double) i / resolution);
+        }
+        return new Easing(callable, id, table);
+    }
 
-        return values;
+    /**
+     * Same as {@link #withLookupTable(int)} with {@link #DEFAULT_LOOKUP_RESOLUTION}.
+     *
+     * @return new {@link Easing}
+     */
+    public Easing withLookupTable() {
+        return withLookupTable(DEFAULT_LOOKUP_RESOLUTION);
     }
 
-    public Easing(Function<Double, Double> callable, int id) {
-        this.id = id;
-        this.callable = callable;
+    /**
+     * @return {@code true} if this easing is evaluated from a precomputed table
+     */
+    public boolean hasLookupTable() {
+        return table != null;
     }
 
     /**
@@ -88,60 +148,74 @@ public class Easing {
      * @return 0-1
      */
     public double getValue(double t) {
-        return callable.apply(t);
+        if (table != null) {
+            return lookup(table, t);
+        }
+        return callable.applyAsDouble(t);
+    }
+
+    /**
+     * Evaluates the easing for every value of {@code t}.
+     *
+     * @param t Values between 0 and 1
+     * @param out Array receiving the eased values, at least as long as {@code t}
+     */
+    public void evaluate(double[] t, double[] out) {
+        evaluate(t, out, 0, t.length);
+    }
+
+    /**
+     * Evaluates the easing for {@code length} values of {@code t}, starting at {@code offset}.
+     * Results are written at the same positions of {@code out}.
+     *
+     * @param t Values between 0 and 1
+     * @param out Array receiving the eased values
+     * @param offset First position to evaluate
+     * @param length Amount of values to evaluate
+     */
+    public void evaluate(double[] t, double[] out, int offset, int length) {
+        int end = offset + length;
+        if (offset < 0 || length < 0 || end > t.length || end > out.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + ".." + end + " out of bounds");
+        }
+
+        double[] table = this.table;
+        if (table != null) {
+            for (int i = offset; i < end; i++) {
+                out[i] = lookup(table, t[i]);
+            }
+        } else {
+            DoubleUnaryOperator callable = this.callable;
+            for (int i = offset; i < end; i++) {
+                out[i] = callable.applyAsDouble(t[i]);
+            }
+        }
+    }
+
+    private static double lookup(double[] table, double t) {
+        int resolution = table.length - 1;
+        if (t <= 0) return table[0];
+        if (t >= 1) return table[resolution];
+
+        double x = t * resolution;
+        int i = (int) x;
+        double a = table[i];
+        return a + (table[i + 1] - a) * (x - i);
     }
 
     public int getId() {
         return id;
     }
 
+    /**
+     * @param id Id of a built-in easing
+     * @return The easing with that id, or {@link #EASE_INOUT_CUBIC} if there is none
+     */
     public static Easing fromId(int id) {
-        switch (id) {
-            case 0:
-                return EASE_IN_SINE;
-            case 1:
-                return EASE_OUT_SINE;
-            case 2:
-                return EASE_INOUT_SINE;
-            case 3:
-                return EASE_IN_QUAD;
-            case 4:
-                return EASE_OUT_QUAD;
-            case 5:
-                return EASE_INOUT_QUAD;
-            case 6:
-                return EASE_IN_CUBIC;
-            case 7:
-                return EASE_OUT_CUBIC;
-            case 8:
-                return EASE_INOUT_CUBIC;
-            case 9:
-                return EASE_IN_QUART;
-            case 10:
-                return EASE_OUT_QUART;
-            case 11:
-                return EASE_INOUT_QUART;
-            case 12:
-                return EASE_IN_QUINT;
-            case 13:
-                return EASE_OUT_QUINT;
-            case 14:
-                return EASE_INOUT_QUINT;
-            case 15:
-                return EASE_IN_EXPO;
-            case 16:
-                return EASE_OUT_EXPO;
-            case 17:
-                return EASE_INOUT_EXPO;
-            case 18:
-                return EASE_IN_CIRC;
-            case 19:
-                return EASE_OUT_CIRC;
-            case 20:
-                return EASE_INOUT_CIRC;
-            default:
-                return EASE_INOUT_CUBIC;
+        if (id < 0 || id >= BY_ID.length) {
+            return EASE_INOUT_CUBIC;
         }
+        return BY_ID[id];
     }
 
 }
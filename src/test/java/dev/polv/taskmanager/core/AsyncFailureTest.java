@@ -0,0 +1,56 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.clock.ManualClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that an awaited async element that throws stops its chain, the same way a failed stage does.
+ */
+class AsyncFailureTest {
+
+    @Test
+    void awaitedAsyncFailureStopsTheChain() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ManualClock clock = new ManualClock();
+        TaskManager manager = TaskManager.builder().clock(clock).executor(executor).build();
+        try {
+            IllegalStateException error = new IllegalStateException("boom");
+            AtomicBoolean ranAfter = new AtomicBoolean();
+            TaskChain chain = TaskChain.create(manager)
+                    .runAsyncAwait(ctx -> {
+                        throw error;
+                    })
+                    .run(ctx -> ranAfter.set(true));
+            CompletableFuture<Context> future = chain.toFuture();
+            chain.start();
+
+            for (int i = 0; i < 1000 && !future.isDone(); i++) {
+                manager.tick();
+                Thread.sleep(1);
+            }
+
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+            assertSame(error, thrown.getCause());
+            assertFalse(ranAfter.get());
+            assertTrue(chain.isFinished());
+
+            // The executor thread survived the error
+            assertTrue(executor.submit(() -> true).get(1, TimeUnit.SECONDS));
+        } finally {
+            manager.shutdown();
+            executor.shutdownNow();
+        }
+    }
+}
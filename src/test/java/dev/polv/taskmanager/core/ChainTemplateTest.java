@@ -0,0 +1,63 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.elements.FunctionElement;
+import dev.polv.taskmanager.core.elements.TaskElement;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainTemplateTest {
+
+    @Test
+    void templateElementsAreFrozen() {
+        TaskChain chain = TaskChain.create(null).run(ctx -> {});
+        ChainTemplate.of(chain);
+
+        TaskElement element = chain.getElementsForTemplate().get(0);
+        assertTrue(element.isFrozen());
+        assertThrows(IllegalStateException.class, () -> ((FunctionElement) element).setFunction(ctx -> {}));
+    }
+
+    @Test
+    void staleRunnerCompletionDoesNotResume() throws Exception {
+        TaskManager manager = TaskManager.create();
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger after = new AtomicInteger();
+            TaskChain chain = TaskChain.create(manager)
+                    .runAsyncAwait(ctx -> {
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    })
+                    .run(ctx -> after.incrementAndGet());
+            chain.start();
+            manager.tick();
+
+            // A runner left over from an earlier run of the chain reports in
+            chain.runnerFinished(-1, new IllegalStateException("stale"));
+            for (int i = 0; i < 10; i++) {
+                manager.tick();
+            }
+            assertEquals(0, after.get());
+            assertTrue(chain.isRunning());
+
+            release.countDown();
+            for (int i = 0; i < 1000 && after.get() == 0; i++) {
+                manager.tick();
+                Thread.sleep(1);
+            }
+            assertEquals(1, after.get());
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
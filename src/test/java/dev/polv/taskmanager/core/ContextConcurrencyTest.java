@@ -0,0 +1,63 @@
+package dev.polv.taskmanager.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that writes to a {@link Context} from different threads are never lost while its slot array grows.
+ */
+class ContextConcurrencyTest {
+
+    private static final int KEYS_PER_THREAD = 64;
+    private static final int ROUNDS = 20_000;
+
+    @Test
+    void concurrentWritesSurviveGrowth() throws Exception {
+        ContextKey<?>[] keys = new ContextKey<?>[KEYS_PER_THREAD * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ContextKey.of("context-concurrency-" + i, Integer.class);
+        }
+
+        TaskManager manager = TaskManager.create();
+        try {
+            Context[] contexts = new Context[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                contexts[round] = TaskChain.create(manager).getContext();
+            }
+
+            // Each thread writes every other key of the same fresh context, so both keep growing the array under each other
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Thread even = new Thread(() -> write(contexts, keys, 0, barrier));
+            Thread odd = new Thread(() -> write(contexts, keys, 1, barrier));
+            even.start();
+            odd.start();
+            even.join();
+            odd.join();
+
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < keys.length; i++) {
+                    assertEquals(i, contexts[round].get(keys[i]), "Lost key " + i + " in round " + round);
+                }
+            }
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(Context[] contexts, ContextKey<?>[] keys, int first, CyclicBarrier barrier) {
+        for (Context context : contexts) {
+            try {
+                barrier.await();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            for (int i = first; i < keys.length; i += 2) {
+                context.put((ContextKey<Integer>) keys[i], i);
+            }
+        }
+    }
+}
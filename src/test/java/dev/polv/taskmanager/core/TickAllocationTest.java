@@ -0,0 +1,92 @@
+package dev.polv.taskmanager.core;
+
+import dev.polv.taskmanager.core.clock.ManualClock;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that a steady-state {@link TaskManager#tick()} allocates nothing, the same setups as the tick benchmark.
+ * <br><br>
+ * The ticks are measured with the allocation counter of the current thread, once enough of them ran for the JIT to
+ * compile the tick path. The JIT may still allocate once while finishing a compilation, so the test passes if any of
+ * a few windows of ticks allocated nothing.
+ */
+class TickAllocationTest {
+
+    private static final int CHAINS = 1000;
+    private static final int WARMUP_TICKS = 20_000;
+    private static final int MEASURED_TICKS = 1000;
+    private static final int WINDOWS = 5;
+    private static final long FRAME_NANOS = 1_000_000L;
+
+    @Test
+    void idleChains() {
+        ManualClock clock = new ManualClock();
+        TaskManager manager = TaskManager.builder().clock(clock).build();
+        for (int i = 0; i < CHAINS; i++) {
+            TaskChain.create(manager).run(ctx -> {}).timeout(Duration.ofDays(1)).run(ctx -> {}).start();
+        }
+
+        assertEquals(0, bytesPerTick(manager, clock));
+    }
+
+    @Test
+    void dueChains() {
+        ManualClock clock = new ManualClock();
+        TaskManager manager = TaskManager.builder().clock(clock).build();
+        for (int i = 0; i < CHAINS; i++) {
+            TaskChain.create(manager).run(ctx -> {}).repeat(Duration.ZERO, Duration.ZERO);
+        }
+
+        assertEquals(0, bytesPerTick(manager, clock));
+    }
+
+    @Test
+    void waitingAndTimedChains() {
+        ManualClock clock = new ManualClock();
+        TaskManager manager = TaskManager.builder().clock(clock).build();
+        for (int i = 0; i < CHAINS; i++) {
+            TaskChain.create(manager)
+                    .run(ctx -> {})
+                    .timeout(Duration.ofMillis(i % 7))
+                    .runTimed((ctx, progress) -> {}, Duration.ofMillis(30))
+                    .repeat(Duration.ZERO, Duration.ofMillis(3));
+        }
+
+        assertEquals(0, bytesPerTick(manager, clock));
+    }
+
+    private static double bytesPerTick(TaskManager manager, ManualClock clock) {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "Allocation counters aren't available");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "Allocation counters aren't available");
+
+        try {
+            for (int i = 0; i < WARMUP_TICKS; i++) {
+                clock.advance(FRAME_NANOS);
+                manager.tick();
+            }
+
+            long thread = Thread.currentThread().getId();
+            long least = Long.MAX_VALUE;
+            for (int window = 0; window < WINDOWS && least > 0; window++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                for (int i = 0; i < MEASURED_TICKS; i++) {
+                    clock.advance(FRAME_NANOS);
+                    manager.tick();
+                }
+                least = Math.min(least, threads.getThreadAllocatedBytes(thread) - before);
+            }
+            return least / (double) MEASURED_TICKS;
+        } finally {
+            manager.shutdown();
+        }
+    }
+}